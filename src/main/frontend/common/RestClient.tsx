@@ -24,6 +24,10 @@ export interface StepInfo {
   totalDurationMillis: string;
 }
 
+export interface RunState extends RunStatus {
+  steps: StepInfo[];
+}
+
 // Internal representation of console log.
 export interface StepLogBufferInfo {
   lines: string[];
@@ -36,6 +40,49 @@ export interface ConsoleLogData {
   text: string;
   startByte: number;
   endByte: number;
+  // Set when the response stopped before the end of the log - the rest
+  // should be requested from 'endByte'.
+  hasMore?: boolean;
+}
+
+// The ETag of the last response for each URL, so we only download data that has changed.
+const etags = new Map<string, string>();
+
+/**
+ * Fetches JSON from 'url', sending the ETag of the last response (if any) as 'If-None-Match'.
+ * Resolves to undefined if the server says nothing has changed since the last call.
+ */
+export async function fetchJsonIfChanged(url: string): Promise<any | undefined> {
+  const headers: Record<string, string> = {};
+  const etag = etags.get(url);
+  if (etag) {
+    headers["If-None-Match"] = etag;
+  }
+  // Handle caching ourselves, otherwise the browser will turn a 304 into a 200.
+  const response = await fetch(url, { headers, cache: "no-store" });
+  if (response.status === 304) {
+    return undefined;
+  }
+  if (!response.ok) throw response.statusText;
+  const newEtag = response.headers.get("ETag");
+  if (newEtag) {
+    etags.set(url, newEtag);
+  } else {
+    etags.delete(url);
+  }
+  return await response.json();
+}
+
+// The API returns 'complete' but we expect 'isComplete'.
+export function mapCompleteStatus(data: any) {
+  if (data.hasOwnProperty("complete")) {
+    data["isComplete"] = data["complete"];
+    delete data["complete"];
+  }
+  if (!("isComplete" in data)) {
+    console.error("Did not get 'complete' status from API.");
+  }
+  return data;
 }
 
 export async function getRunStatus(): Promise<RunStatus | null> {
@@ -43,23 +90,28 @@ export async function getRunStatus(): Promise<RunStatus | null> {
     let response = await fetch("tree");
     if (!response.ok) throw response.statusText;
     let json = await response.json();
-    if (json.data.hasOwnProperty("complete")) {
-      // The API returned 'complete' but we expect 'isComplete'.
-      if ("complete" in json.data) {
-        json.data["isComplete"] = json.data["complete"];
-        delete json.data["complete"];
-      }
-      if (!("isComplete" in json.data)) {
-        console.error("Did not get 'complete' status from API.");
-      }
-    }
-    return json.data;
+    return mapCompleteStatus(json.data);
   } catch (e) {
     console.error(`Caught error getting tree: '${e}'`);
     return null;
   }
 }
 
+// Gets the stages and steps of the run in a single request.
+// Returns null on error, or undefined if nothing has changed since the last call.
+export async function getRunState(): Promise<RunState | null | undefined> {
+  try {
+    let json = await fetchJsonIfChanged("runState");
+    if (json === undefined) {
+      return undefined;
+    }
+    return mapCompleteStatus(json.data);
+  } catch (e) {
+    console.error(`Caught error getting run state: '${e}'`);
+    return null;
+  }
+}
+
 export async function getRunSteps(): Promise<StepInfo[] | null> {
   try {
     let response = await fetch("allSteps");
@@ -89,3 +141,28 @@ export async function getConsoleTextOffset(
     return null;
   }
 }
+
+export interface ConsoleLogTail extends ConsoleLogData {
+  // Set once the step has finished, so there won't be any more output.
+  complete: boolean;
+}
+
+// Waits (up to 'timeoutMillis') for the step to write output after
+// 'startByte', returning it as soon as there is some.
+export async function tailConsoleText(
+  stepId: string,
+  startByte: number,
+  timeoutMillis: number = 30000
+): Promise<ConsoleLogTail | null> {
+  try {
+    let response = await fetch(
+      `tail?nodeId=${stepId}&startByte=${startByte}&timeoutMillis=${timeoutMillis}`
+    );
+    if (!response.ok) throw response.statusText;
+    let json = await response.json();
+    return json.data;
+  } catch (e) {
+    console.error(`Caught error when tailing console: '${e}'`);
+    return null;
+  }
+}
@@ -0,0 +1,41 @@
+/**
+ * Subscribes to a run's Server-Sent Events stream at 'url', calling 'onUpdate' with the data of
+ * each event. The stream is closed once 'isComplete' returns true.
+ * If the stream fails before any data arrives (e.g. a proxy doesn't support it) then it is closed
+ * and 'onFallback' is called, so the caller can poll instead. Later errors are left to the browser,
+ * which reconnects automatically.
+ * Returns a function that closes the stream.
+ */
+export function subscribeToRunEvents<Type>(
+  url: string,
+  onUpdate: (data: Type) => void,
+  isComplete: (data: Type) => boolean,
+  onFallback: () => void
+): () => void {
+  if (typeof EventSource === "undefined") {
+    onFallback();
+    return () => {};
+  }
+  const source = new EventSource(url);
+  let receivedData = false;
+  let closed = false;
+  const close = () => {
+    closed = true;
+    source.close();
+  };
+  source.addEventListener("update", (event) => {
+    receivedData = true;
+    const data = JSON.parse((event as MessageEvent).data) as Type;
+    onUpdate(data);
+    if (isComplete(data)) {
+      close();
+    }
+  });
+  source.onerror = () => {
+    if (!closed && !receivedData) {
+      close();
+      onFallback();
+    }
+  };
+  return close;
+}
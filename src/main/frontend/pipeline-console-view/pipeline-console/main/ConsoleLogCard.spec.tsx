@@ -49,6 +49,9 @@ describe("ConsoleLogCard", () => {
     handleMoreConsoleClick: () => {
       console.log("handleMoreConsoleClick triggered");
     },
+    handleLogTail: () => {
+      console.log("handleLogTail triggered");
+    },
     scrollParentId: "test-parent",
   } as ConsoleLogCardProps;
 
@@ -17,6 +17,7 @@ import LinkIcon from "@mui/icons-material/Link";
 import { Tooltip } from "react-tippy";
 
 import {
+  ConsoleLogData,
   LOG_FETCH_SIZE,
   StepInfo,
   StepLogBufferInfo,
@@ -55,6 +56,7 @@ export type ConsoleLogCardProps = {
   isExpanded: boolean;
   handleStepToggle: (event: React.SyntheticEvent<{}>, nodeId: string) => void;
   handleMoreConsoleClick: (nodeId: string, startByte: number) => void;
+  handleLogTail: (nodeId: string, tail: ConsoleLogData) => void;
   // Id of the element whose scroll bar we wish to use.
   scrollParentId: string;
 };
@@ -274,7 +276,7 @@ export class ConsoleLogCard extends React.Component<
         </CardActionArea>
         <ConsoleLogModal
           logBuffer={this.props.stepBuffer}
-          handleMoreConsoleClick={this.props.handleMoreConsoleClick}
+          handleLogTail={this.props.handleLogTail}
           step={this.props.step}
           open={this.state.open}
           setClose={handleClose}
@@ -293,7 +295,7 @@ export class ConsoleLogCard extends React.Component<
             <Suspense fallback={<CircularProgress />}>
               <ConsoleLogStream
                 logBuffer={this.props.stepBuffer}
-                handleMoreConsoleClick={this.props.handleMoreConsoleClick}
+                handleLogTail={this.props.handleLogTail}
                 step={this.props.step}
               />
             </Suspense>
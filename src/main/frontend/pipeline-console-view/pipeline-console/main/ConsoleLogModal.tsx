@@ -1,11 +1,15 @@
 import React from "react";
-import { StepInfo, StepLogBufferInfo } from "./PipelineConsoleModel";
+import {
+  ConsoleLogData,
+  StepInfo,
+  StepLogBufferInfo,
+} from "./PipelineConsoleModel";
 import { getStepStatus } from "../../../step-status/StepStatus";
 import CloseIcon from "./CloseIcon";
 
 export interface ConsoleLogModelProps {
   logBuffer: StepLogBufferInfo;
-  handleMoreConsoleClick: (nodeId: string, startByte: number) => void;
+  handleLogTail: (nodeId: string, tail: ConsoleLogData) => void;
   step: StepInfo;
 
   setClose: () => void;
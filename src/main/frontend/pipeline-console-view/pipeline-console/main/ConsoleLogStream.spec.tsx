@@ -53,8 +53,8 @@ describe("ConsoleLogStream", () => {
     step: baseStep,
     logBuffer: baseBuffer,
     isExpanded: false,
-    handleMoreConsoleClick: () => {
-      console.log("handleMoreConsoleClick triggered");
+    handleLogTail: () => {
+      console.log("handleLogTail triggered");
     },
   } as ConsoleLogStreamProps;
 
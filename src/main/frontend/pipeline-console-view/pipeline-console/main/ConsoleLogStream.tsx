@@ -1,20 +1,30 @@
 import React from "react";
 import { Virtuoso, VirtuosoHandle, LogLevel } from "react-virtuoso";
 import { useState, useEffect, useRef } from "react";
-import { Result, StepInfo, StepLogBufferInfo } from "./PipelineConsoleModel";
+import {
+  ConsoleLogData,
+  POLL_INTERVAL,
+  Result,
+  StepInfo,
+  StepLogBufferInfo,
+  tailConsoleText,
+} from "./PipelineConsoleModel";
 
 import Button from "@mui/material/Button";
 
 export interface ConsoleLogStreamProps {
   logBuffer: StepLogBufferInfo;
-  handleMoreConsoleClick: (nodeId: string, startByte: number) => void;
+  handleLogTail: (nodeId: string, tail: ConsoleLogData) => void;
   step: StepInfo;
 }
 
 import { ConsoleLine } from "./ConsoleLine";
 
 export default function ConsoleLogStream(props: ConsoleLogStreamProps) {
-  const appendInterval = useRef<NodeJS.Timeout | null>(null);
+  // Incremented to stop the running tail of the log, if there is one.
+  const tailGeneration = useRef(0);
+  const logBuffer = useRef(props.logBuffer);
+  logBuffer.current = props.logBuffer;
   const virtuosoRef = useRef<VirtuosoHandle>(null);
   const [stickToBottom, setStickToBottom] = useState(false);
   const [moveToBottom, setMoveToBottom] = useState(true);
@@ -23,9 +33,7 @@ export default function ConsoleLogStream(props: ConsoleLogStreamProps) {
 
   useEffect(() => {
     return () => {
-      if (appendInterval.current) {
-        clearInterval(appendInterval.current);
-      }
+      stopTailing();
       if (showButtonInterval.current) {
         clearTimeout(showButtonInterval.current);
       }
@@ -66,6 +74,41 @@ export default function ConsoleLogStream(props: ConsoleLogStreamProps) {
     }
   };
 
+  const stopTailing = () => {
+    tailGeneration.current++;
+  };
+
+  // Long-polls the server for new output, so nothing is requested while the
+  // step is quiet and new lines show up as soon as they are written.
+  const startTailing = async () => {
+    const generation = ++tailGeneration.current;
+    while (generation === tailGeneration.current) {
+      // Read through the ref, as the buffer may have been replaced since the
+      // tail started.
+      const startByte = logBuffer.current.endByte;
+      if (startByte < 0) {
+        // The first part of the log is still loading.
+        await new Promise((resolve) => setTimeout(resolve, POLL_INTERVAL));
+        continue;
+      }
+      const tail = await tailConsoleText(props.step.id, startByte);
+      if (generation !== tailGeneration.current) {
+        return;
+      }
+      if (!tail) {
+        // Back off, rather than retrying a failing request straight away.
+        await new Promise((resolve) => setTimeout(resolve, POLL_INTERVAL));
+        continue;
+      }
+      // The response holds the new output, so append it rather than asking
+      // for it again.
+      props.handleLogTail(props.step.id, tail);
+      if (tail.complete && !tail.hasMore) {
+        return;
+      }
+    }
+  };
+
   const shouldRequestMoreLogs = () => {
     return props.step.state === Result.running || props.logBuffer.startByte < 0;
   };
@@ -113,19 +156,10 @@ export default function ConsoleLogStream(props: ConsoleLogStreamProps) {
           );
         }}
         atBottomStateChange={(bottom) => {
-          if (appendInterval.current) {
-            clearInterval(appendInterval.current);
-          }
+          stopTailing();
           console.debug(`'atBottomStateChange' called with '${bottom}'`);
           if (bottom && shouldRequestMoreLogs()) {
-            console.debug(`Fetching more log text`);
-            appendInterval.current = setInterval(() => {
-              props.handleMoreConsoleClick(
-                props.step.id,
-                props.logBuffer.startByte
-              );
-            }, 1000);
-            console.debug(`Received more text '${bottom} - ${stickToBottom}'`);
+            startTailing();
           }
           console.debug(`Setting stickToBottom to '${bottom}'`);
           setStickToBottom(bottom);
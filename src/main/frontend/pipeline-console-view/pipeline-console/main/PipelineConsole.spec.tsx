@@ -11,7 +11,7 @@ import DataTreeView, { DataTreeViewProps } from "./DataTreeView";
 import StageView, { StageViewProps } from "./StageView";
 import { StepInfo, StepLogBufferInfo } from "./PipelineConsoleModel";
 import { render } from "@testing-library/react";
-import { RunStatus } from "../../../common/RestClient";
+import { RunState } from "../../../common/RestClient";
 import {
   defaultStagesList,
   allSuccessfulStepList,
@@ -30,24 +30,20 @@ const getConsoleText = jest
   })
   .mockName("default getConsoleText");
 
-const getRunStatusMock = jest
-  .fn((): RunStatus => {
+const getRunStateMock = jest
+  .fn((): RunState => {
     return {
       stages: defaultStagesList,
       isComplete: true,
+      steps: allSuccessfulStepList,
     };
   })
-  .mockName("default getRunStatusMock");
+  .mockName("default getRunStateMock");
 
 jest.mock("../../../common/RestClient", () => {
   return {
-    getRunStatus: jest.fn().mockImplementation(() => {
-      return getRunStatusMock();
-    }),
-    getRunSteps: jest.fn().mockImplementation(() => {
-      return {
-        steps: allSuccessfulStepList,
-      };
+    getRunState: jest.fn().mockImplementation(() => {
+      return getRunStateMock();
     }),
     getConsoleTextOffset: jest
       .fn()
@@ -197,6 +193,7 @@ describe("PipelineConsole", () => {
       {
         expandedSteps: ["21"],
         handleMoreConsoleClick: expect.anything(),
+        handleLogTail: expect.anything(),
         handleStepToggle: expect.anything(),
         scrollParentId: "stage-view-pane",
         selectedStage: "3",
@@ -217,6 +214,7 @@ describe("PipelineConsole", () => {
       {
         expandedSteps: [],
         handleMoreConsoleClick: expect.anything(),
+        handleLogTail: expect.anything(),
         handleStepToggle: expect.anything(),
         scrollParentId: "stage-view-pane",
         selectedStage: "1",
@@ -237,6 +235,7 @@ describe("PipelineConsole", () => {
       {
         expandedSteps: [],
         handleMoreConsoleClick: expect.anything(),
+        handleLogTail: expect.anything(),
         handleStepToggle: expect.anything(),
         scrollParentId: "stage-view-pane",
         selectedStage: "3",
@@ -257,6 +256,7 @@ describe("PipelineConsole", () => {
       {
         expandedSteps: ["10"],
         handleMoreConsoleClick: expect.anything(),
+        handleLogTail: expect.anything(),
         handleStepToggle: expect.anything(),
         scrollParentId: "stage-view-pane",
         selectedStage: "0",
@@ -3,15 +3,17 @@ import { lazy, Suspense } from "react";
 import { SplitPane } from "react-collapse-pane";
 
 import {
+  ConsoleLogData,
   LOG_FETCH_SIZE,
   StepLogBufferInfo,
-  getRunStatus,
-  getRunSteps,
+  getRunState,
+  mapCompleteStatus,
   getConsoleTextOffset,
   POLL_INTERVAL,
   pollUntilComplete,
   RunStatus,
 } from "./PipelineConsoleModel";
+import { subscribeToRunEvents } from "../../../common/RunEvents";
 import { CircularProgress } from "@mui/material";
 
 import "./pipeline-console.scss";
@@ -105,6 +107,11 @@ export const updateStepBuffer = (
       stepBuffer.startByte = response.startByte;
     }
     stepBuffer.endByte = response.endByte;
+    if (response.hasMore) {
+      // Each response is bounded in size, so keep requesting until we have
+      // caught up with the log.
+      updateStepBuffer(stepId, response.endByte, stepBuffer);
+    }
   });
   return stepBuffer;
 };
@@ -113,12 +120,16 @@ export default class PipelineConsole extends React.Component<
   PipelineConsoleProps,
   PipelineConsoleState
 > {
+  // Closes the stream of updates from the server, if we have one.
+  closeEventStream?: () => void;
+
   constructor(props: PipelineConsoleProps) {
     super(props);
     this.handleStageSelect = this.handleStageSelect.bind(this);
     this.handleStageToggle = this.handleStageToggle.bind(this);
     this.handleStepToggle = this.handleStepToggle.bind(this);
     this.handleMoreConsoleClick = this.handleMoreConsoleClick.bind(this);
+    this.handleLogTail = this.handleLogTail.bind(this);
 
     // set default values of state
     this.state = {
@@ -139,21 +150,19 @@ export default class PipelineConsole extends React.Component<
   }
 
   // State update methods
-  async getStateUpdate(): Promise<PipelineStatusInfo> {
-    // Call functions in parallel.
-    const updateStages = async () => {
-      return await getRunStatus();
-    };
-    const updateSteps = async () => {
-      return await getRunSteps();
-    };
-    let stages = await updateStages();
-    let steps = await updateSteps();
-    return {
-      // Default 'isComplete' to false and 'stages' to empty array incase 'updateStages' returns null.
-      ...(stages ?? { isComplete: false, stages: [] }),
-      ...(steps ?? { steps: [] }),
-    } as PipelineStatusInfo;
+  // Returns null if nothing has changed since the last update.
+  async getStateUpdate(): Promise<PipelineStatusInfo | null> {
+    // Get the stages and steps in one request.
+    let runState = await getRunState();
+    if (runState === undefined) {
+      return null;
+    }
+    // Default 'isComplete' to false and 'stages' and 'steps' to empty arrays incase 'getRunState' returns null.
+    return (runState ?? {
+      isComplete: false,
+      stages: [],
+      steps: [],
+    }) as PipelineStatusInfo;
   }
 
   setStagesAndSteps(newStatus: PipelineStatusInfo) {
@@ -188,8 +197,8 @@ export default class PipelineConsole extends React.Component<
             this.selectDefaultNode();
           }
           if (!this.state.isComplete) {
-            // Setup poller to update stages.
-            this.pollForUpdates();
+            // Listen for updates to stages and steps.
+            this.subscribeForUpdates();
           }
         }
       );
@@ -198,6 +207,7 @@ export default class PipelineConsole extends React.Component<
 
   // Stop poller from running.
   componentWillUnmount(): void {
+    this.closeEventStream?.();
     this.setState((prevState) => {
       return {
         ...prevState,
@@ -206,21 +216,41 @@ export default class PipelineConsole extends React.Component<
     });
   }
 
+  // Have the server push updates to us, falling back to polling if that fails.
+  subscribeForUpdates() {
+    this.closeEventStream = subscribeToRunEvents<PipelineStatusInfo>(
+      "events",
+      (data: PipelineStatusInfo) => {
+        this.setStagesAndSteps(mapCompleteStatus(data));
+      },
+      (data: PipelineStatusInfo) => {
+        if (data.isComplete) {
+          this.onPipelineComplete();
+        }
+        return data.isComplete;
+      },
+      () => {
+        this.pollForUpdates();
+      }
+    );
+  }
+
   pollForUpdates() {
     // Setup poller to update stages and steps.
-    pollUntilComplete<PipelineStatusInfo>({
+    pollUntilComplete<PipelineStatusInfo | null>({
       functionToPoll: () => {
         return this.getStateUpdate();
       },
-      checkSuccess: (data: PipelineStatusInfo) => {
+      checkSuccess: (data: PipelineStatusInfo | null) => {
+        // 'data' is null if nothing has changed since the last poll.
         return data ? true : false;
       },
-      onSuccess: (data: PipelineStatusInfo) => {
-        this.setStagesAndSteps(data);
+      onSuccess: (data: PipelineStatusInfo | null) => {
+        this.setStagesAndSteps(data as PipelineStatusInfo);
       },
-      checkComplete: (data: PipelineStatusInfo) => {
+      checkComplete: (data: PipelineStatusInfo | null) => {
         // Set 'checkComplete' when component unmounted to prevent needless polling.
-        return (data.isComplete ?? false) || this.state.hasUnmounted;
+        return (data?.isComplete ?? false) || this.state.hasUnmounted;
       },
       onComplete: () => {
         this.onPipelineComplete();
@@ -445,6 +475,30 @@ export default class PipelineConsole extends React.Component<
     this.updateStepConsoleOffset(nodeId, true, startByte);
   }
 
+  // Appends the new output returned by a tail of a step's log to its buffer.
+  handleLogTail(nodeId: string, tail: ConsoleLogData): void {
+    const stepBuffer = this.state.stepBuffers.get(nodeId);
+    if (!stepBuffer || stepBuffer.endByte !== tail.startByte) {
+      console.debug(
+        `Ignoring tail of step ${nodeId} - its log has been reloaded since.`
+      );
+      return;
+    }
+    if (tail.text.length > 0) {
+      const newLogLines = tail.text.replace(/\n$/, "").split("\n");
+      stepBuffer.lines = [...stepBuffer.lines, ...newLogLines];
+    }
+    stepBuffer.endByte = tail.endByte;
+    let stepBuffersCopy = new Map(this.state.stepBuffers);
+    stepBuffersCopy.set(nodeId, stepBuffer);
+    this.setState((prevState) => {
+      return {
+        ...prevState,
+        stepBuffers: stepBuffersCopy,
+      };
+    });
+  }
+
   // Gets the step with the given id (or none if not selected).
   getStepWithId(nodeId: string, steps: StepInfo[]) {
     let foundStep = steps.find((step) => step.id == nodeId);
@@ -556,6 +610,7 @@ export default class PipelineConsole extends React.Component<
                   selectedStage={this.state.openStage}
                   handleStepToggle={this.handleStepToggle}
                   handleMoreConsoleClick={this.handleMoreConsoleClick}
+                  handleLogTail={this.handleLogTail}
                   scrollParentId="stage-view-pane"
                 />
               </Suspense>
@@ -63,6 +63,9 @@ describe("StageView", () => {
     handleMoreConsoleClick: () => {
       console.log("handleMoreConsoleClick triggered");
     },
+    handleLogTail: () => {
+      console.log("handleLogTail triggered");
+    },
     scrollParentId: "dummy-id",
   } as StageViewProps;
 
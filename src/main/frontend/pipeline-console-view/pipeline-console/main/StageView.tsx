@@ -8,6 +8,7 @@ import InfoIcon from "@mui/icons-material/Info";
 import LinkIcon from "@mui/icons-material/Link";
 
 import {
+  ConsoleLogData,
   StepInfo,
   StageInfo,
   StepLogBufferInfo,
@@ -121,6 +122,7 @@ export interface StageViewProps {
   expandedSteps: string[];
   handleStepToggle: (event: React.SyntheticEvent<{}>, nodeId: string) => void;
   handleMoreConsoleClick: (nodeId: string, startByte: number) => void;
+  handleLogTail: (nodeId: string, tail: ConsoleLogData) => void;
   // Id of the element whose scroll bar we wish to use.
   scrollParentId: string;
 }
@@ -170,6 +172,7 @@ export default class StageView extends React.Component {
           handleStepToggle={this.props.handleStepToggle}
           isExpanded={this.props.expandedSteps.includes(stepItemData.id)}
           handleMoreConsoleClick={this.props.handleMoreConsoleClick}
+          handleLogTail={this.props.handleLogTail}
           key={`step-console-card-${stepItemData.id}`}
           scrollParentId={this.props.scrollParentId}
         />
@@ -72,11 +72,13 @@ export class PipelineGraph extends React.Component {
     };
     const onPipelineComplete = () => undefined;
 
+    // Only the run's own 'tree' endpoint supports deltas and events.
     startPollingPipelineStatus(
       onPipelineDataReceived,
       onPollingError,
       onPipelineComplete,
-      this.props.path ?? this.getTreePath()
+      this.props.path ?? this.getTreePath(),
+      this.props.path === undefined
     );
   }
 
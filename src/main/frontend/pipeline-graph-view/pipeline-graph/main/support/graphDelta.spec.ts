@@ -0,0 +1,72 @@
+import { applyGraphDelta, buildStageTree, GraphDelta } from "./graphDelta";
+import { Result, StageInfo } from "../PipelineGraphModel";
+
+const stage = (
+  id: number,
+  name: string,
+  state: Result,
+  children: Array<StageInfo> = []
+): StageInfo => ({
+  id,
+  name,
+  title: name,
+  state,
+  completePercent: 50,
+  type: "STAGE",
+  children,
+  pauseDurationMillis: "",
+  startTimeMillis: "",
+  totalDurationMillis: "",
+});
+
+const fullDelta = (stages: Array<StageInfo>): GraphDelta => ({
+  revision: "1",
+  complete: false,
+  full: true,
+  stages,
+  changed: [],
+  removed: [],
+});
+
+describe("graphDelta", () => {
+  it("rebuilds a full tree", () => {
+    const stages = [
+      stage(3, "Build", Result.success),
+      stage(10, "Test", Result.running, [
+        stage(14, "Unit", Result.running),
+        stage(12, "Lint", Result.success),
+      ]),
+    ];
+    const tree = buildStageTree(applyGraphDelta(new Map(), fullDelta(stages)));
+    expect(tree.map((s) => s.name)).toEqual(["Build", "Test"]);
+    expect(tree[1].children.map((s) => s.name)).toEqual(["Lint", "Unit"]);
+  });
+
+  it("applies changed and removed stages", () => {
+    const initial = applyGraphDelta(
+      new Map(),
+      fullDelta([
+        stage(3, "Build", Result.running),
+        stage(8, "Old", Result.running),
+      ])
+    );
+    const { children, ...deploy } = stage(20, "Deploy", Result.running);
+    const { children: _, ...build } = stage(3, "Build", Result.success);
+    const tree = buildStageTree(
+      applyGraphDelta(initial, {
+        revision: "2",
+        complete: false,
+        full: false,
+        stages: [],
+        changed: [
+          { ...build, parentId: null },
+          { ...deploy, parentId: "3" },
+        ],
+        removed: ["8"],
+      })
+    );
+    expect(tree.map((s) => s.name)).toEqual(["Build"]);
+    expect(tree[0].state).toEqual(Result.success);
+    expect(tree[0].children.map((s) => s.name)).toEqual(["Deploy"]);
+  });
+});
@@ -0,0 +1,80 @@
+import { StageInfo } from "../PipelineGraphModel";
+
+// A stage without its children, as returned in the 'changed' list of a delta.
+export interface FlatStageInfo extends Omit<StageInfo, "children"> {
+  parentId: string | null;
+}
+
+/**
+ * Response from 'tree?since=<revision>'.
+ * If 'full' is true 'stages' holds the whole tree, otherwise 'changed' and 'removed' describe the
+ * changes since the requested revision.
+ */
+export interface GraphDelta {
+  revision: string;
+  complete: boolean;
+  full: boolean;
+  stages: Array<StageInfo>;
+  changed: Array<FlatStageInfo>;
+  removed: Array<string>;
+}
+
+/**
+ * Flattened view of the stage tree, keyed by stage id.
+ */
+export type FlatStages = Map<string, FlatStageInfo>;
+
+function flattenStages(
+  stages: Array<StageInfo>,
+  parentId: string | null,
+  flatStages: FlatStages
+) {
+  for (const stage of stages) {
+    const { children, ...rest } = stage;
+    flatStages.set(String(stage.id), { ...rest, parentId });
+    flattenStages(children ?? [], String(stage.id), flatStages);
+  }
+}
+
+/**
+ * Applies a delta to the flattened stages, returning the new flattened stages.
+ */
+export function applyGraphDelta(
+  flatStages: FlatStages,
+  delta: GraphDelta
+): FlatStages {
+  if (delta.full) {
+    const newFlatStages: FlatStages = new Map();
+    flattenStages(delta.stages, null, newFlatStages);
+    return newFlatStages;
+  }
+  const newFlatStages = new Map(flatStages);
+  for (const id of delta.removed) {
+    newFlatStages.delete(id);
+  }
+  for (const stage of delta.changed) {
+    newFlatStages.set(String(stage.id), stage);
+  }
+  return newFlatStages;
+}
+
+/**
+ * Rebuilds the stage tree from the flattened stages. Siblings are ordered by id, which matches the
+ * order the server returns them in.
+ */
+export function buildStageTree(flatStages: FlatStages): Array<StageInfo> {
+  const childrenOf = new Map<string | null, Array<FlatStageInfo>>();
+  for (const stage of flatStages.values()) {
+    const siblings = childrenOf.get(stage.parentId) ?? [];
+    siblings.push(stage);
+    childrenOf.set(stage.parentId, siblings);
+  }
+  const toTree = (parentId: string | null): Array<StageInfo> =>
+    (childrenOf.get(parentId) ?? [])
+      .sort((a, b) => Number(a.id) - Number(b.id))
+      .map(({ parentId: _, ...stage }) => ({
+        ...stage,
+        children: toTree(String(stage.id)),
+      }));
+  return toTree(null);
+}
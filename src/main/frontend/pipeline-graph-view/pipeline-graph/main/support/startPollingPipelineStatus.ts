@@ -1,4 +1,12 @@
 import { StageInfo } from "../PipelineGraphModel";
+import { fetchJsonIfChanged } from "../../../../common/RestClient";
+import { subscribeToRunEvents } from "../../../../common/RunEvents";
+import {
+  applyGraphDelta,
+  buildStageTree,
+  FlatStages,
+  GraphDelta,
+} from "./graphDelta";
 
 interface ApiResult {
   complete: boolean;
@@ -8,22 +16,47 @@ interface ApiResult {
 /**
  * Starts polling the server to retrieve pipeline status.
  * Will only stop once the run is finished.
+ * If 'isRunTree' is true then 'path' is the run's own 'tree' endpoint, so we first try to have
+ * updates pushed from the sibling 'events' endpoint. If that isn't possible we poll, and after
+ * the first request only ask for the stages that changed since the last poll (via
+ * 'tree?since=<revision>'), merging them into the previous stages.
  */
 export default function startPollingPipelineStatus(
   onFetchSuccess: (data: ApiResult) => void,
   onFetchError: (err: Error) => void,
   onPipelineComplete: () => void,
   path: string,
+  isRunTree = false,
   interval = 3000
 ) {
   let isComplete = false;
+  let revision = "";
+  let flatStages: FlatStages = new Map();
 
   async function fetchPipelineData() {
     try {
-      const res = await fetch(path);
-      const result = await res.json();
-      onFetchSuccess(result.data);
-      isComplete = result.data.complete;
+      if (isRunTree) {
+        const result = await fetchJsonIfChanged(
+          `${path}?since=${encodeURIComponent(revision)}`
+        );
+        if (result !== undefined) {
+          const delta = result.data as GraphDelta;
+          flatStages = applyGraphDelta(flatStages, delta);
+          revision = delta.revision;
+          onFetchSuccess({
+            complete: delta.complete,
+            stages: buildStageTree(flatStages),
+          });
+          isComplete = delta.complete;
+        }
+      } else {
+        const result = await fetchJsonIfChanged(path);
+        // Nothing to update if the graph hasn't changed since the last poll.
+        if (result !== undefined) {
+          onFetchSuccess(result.data);
+          isComplete = result.data.complete;
+        }
+      }
     } catch (err) {
       // TODO: implement exponential backoff of the timeout interval
       onFetchError(err);
@@ -35,5 +68,19 @@ export default function startPollingPipelineStatus(
       }
     }
   }
-  fetchPipelineData();
+  if (isRunTree) {
+    subscribeToRunEvents<ApiResult>(
+      path.replace(/tree$/, "events?steps=false"),
+      onFetchSuccess,
+      (data) => {
+        if (data.complete) {
+          onPipelineComplete();
+        }
+        return data.complete;
+      },
+      fetchPipelineData
+    );
+  } else {
+    fetchPipelineData();
+  }
 }
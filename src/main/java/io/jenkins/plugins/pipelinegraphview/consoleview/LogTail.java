@@ -0,0 +1,241 @@
+package io.jenkins.plugins.pipelinegraphview.consoleview;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.console.AnnotatedLargeText;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.HttpResponses;
+import hudson.util.NamingThreadFactory;
+import io.jenkins.plugins.pipelinegraphview.utils.PipelineNodeUtil;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import jenkins.util.SystemProperties;
+import jenkins.util.Timer;
+import net.sf.json.JSONObject;
+import org.jenkinsci.plugins.workflow.graph.FlowNode;
+import org.kohsuke.stapler.HttpResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Holds requests for the log of a running step until it has output past the client's offset.
+ * Each waiting request is async, so no request thread is used while waiting. Every 'pollMillis' the
+ * length of each waited on log is checked, and the request is answered with the new output (as
+ * 'consoleOutput' would) once there is some, the step finishes or the request times out.
+ * The checks and responses run on a small pool of our own, as responses can be large and writing
+ * them blocks on the client - the timer task only hands the check to that pool.
+ */
+final class LogTail {
+    private static final Logger logger = LoggerFactory.getLogger(LogTail.class);
+
+    private static final long POLL_MILLIS = SystemProperties.getLong(LogTail.class.getName() + ".pollMillis", 250L);
+    // Clients just ask again after a timeout, this stops requests being held open forever.
+    static final long MAX_TIMEOUT_MILLIS =
+            SystemProperties.getLong(LogTail.class.getName() + ".maxTimeoutMillis", TimeUnit.SECONDS.toMillis(30));
+
+    private static final int THREADS = SystemProperties.getInteger(LogTail.class.getName() + ".threads", 4);
+
+    private static final Set<Waiter> waiters = ConcurrentHashMap.newKeySet();
+    // Set while a check is queued or running, so slow checks don't pile up.
+    private static final AtomicBoolean checking = new AtomicBoolean();
+    private static ScheduledFuture<?> checkTask;
+    private static ThreadPoolExecutor executor;
+
+    private LogTail() {}
+
+    private static synchronized ThreadPoolExecutor getExecutor() {
+        if (executor == null) {
+            // Threads are created on demand and die when idle.
+            executor = new ThreadPoolExecutor(
+                    THREADS,
+                    THREADS,
+                    60,
+                    TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(),
+                    new NamingThreadFactory(new DaemonThreadFactory(), "PipelineGraphView log tail"));
+            executor.allowCoreThreadTimeOut(true);
+        }
+        return executor;
+    }
+
+    /*
+     * Returns a response holding the new output of the step after 'startByte', waiting up to
+     * 'timeoutMillis' for some to be written.
+     */
+    @NonNull
+    static HttpResponse tail(
+            @NonNull PipelineConsoleViewAction action, @NonNull String nodeId, long startByte, long timeoutMillis)
+            throws IOException {
+        Waiter waiter = new Waiter(action, nodeId, startByte, System.currentTimeMillis() + timeoutMillis);
+        if (waiter.isReady()) {
+            // Already have something to send, so don't wait.
+            return HttpResponses.okJSON(waiter.getData());
+        }
+        return (req, rsp, node) -> {
+            AsyncContext context = req.startAsync();
+            // Just a backstop - waiters are answered by the check task when they time out.
+            context.setTimeout(timeoutMillis + TimeUnit.SECONDS.toMillis(10));
+            waiter.context = context;
+            context.addListener(new AsyncListener() {
+                @Override
+                public void onComplete(AsyncEvent event) {
+                    waiters.remove(waiter);
+                }
+
+                @Override
+                public void onTimeout(AsyncEvent event) {
+                    waiter.complete();
+                }
+
+                @Override
+                public void onError(AsyncEvent event) {
+                    waiter.complete();
+                }
+
+                @Override
+                public void onStartAsync(AsyncEvent event) {}
+            });
+            waiters.add(waiter);
+            startChecking();
+        };
+    }
+
+    private static synchronized void startChecking() {
+        if (checkTask == null) {
+            checkTask = Timer.get()
+                    .scheduleWithFixedDelay(LogTail::queueCheck, POLL_MILLIS, POLL_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static void queueCheck() {
+        if (!waiters.isEmpty() && checking.compareAndSet(false, true)) {
+            try {
+                getExecutor().execute(LogTail::checkWaiters);
+            } catch (RuntimeException e) {
+                // Don't let exceptions escape - they would cancel the check task.
+                checking.set(false);
+                logger.warn("Failed to queue check of log tails", e);
+            }
+        }
+    }
+
+    private static void checkWaiters() {
+        try {
+            long now = System.currentTimeMillis();
+            for (Waiter waiter : waiters) {
+                try {
+                    if (now >= waiter.deadline || waiter.isReady()) {
+                        // Only the first to remove the waiter answers it.
+                        if (waiters.remove(waiter)) {
+                            getExecutor().execute(() -> respond(waiter));
+                        }
+                    }
+                } catch (IOException | RuntimeException e) {
+                    logger.warn("Failed to check log of node " + waiter.nodeId, e);
+                    waiters.remove(waiter);
+                    waiter.complete();
+                }
+            }
+        } finally {
+            checking.set(false);
+        }
+    }
+
+    private static void respond(Waiter waiter) {
+        try {
+            waiter.respond();
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Failed to send log of node " + waiter.nodeId, e);
+            waiter.complete();
+        }
+    }
+
+    /*
+     * A single request, waiting for output.
+     */
+    private static class Waiter {
+        private final PipelineConsoleViewAction action;
+        private final String nodeId;
+        private final long startByte;
+        private final long deadline;
+        private volatile AsyncContext context;
+        private boolean completed = false;
+
+        Waiter(PipelineConsoleViewAction action, String nodeId, long startByte, long deadline) {
+            this.action = action;
+            this.nodeId = nodeId;
+            this.startByte = startByte;
+            this.deadline = deadline;
+        }
+
+        /*
+         * Returns true if there is output after 'startByte', or there won't ever be any more.
+         */
+        boolean isReady() throws IOException {
+            FlowNode node = action.getNode(nodeId);
+            if (node == null || !node.isActive()) {
+                return true;
+            }
+            AnnotatedLargeText<? extends FlowNode> log = PipelineNodeUtil.getLogText(node);
+            return log != null && (log.length() > startByte || log.isComplete());
+        }
+
+        JSONObject getData() throws IOException {
+            JSONObject data = action.getConsoleOutputJson(
+                    nodeId, startByte, null, PipelineConsoleViewAction.MAX_WINDOW_BYTES);
+            if (data == null) {
+                // Asked for bytes past the end of the log.
+                data = new JSONObject();
+                data.put("text", "");
+                data.put("startByte", startByte);
+                data.put("endByte", startByte);
+                data.put("hasMore", false);
+            }
+            FlowNode node = action.getNode(nodeId);
+            data.put("complete", node == null || !node.isActive());
+            return data;
+        }
+
+        synchronized void respond() throws IOException {
+            if (completed) {
+                return;
+            }
+            JSONObject envelope = new JSONObject();
+            envelope.put("status", "ok");
+            envelope.put("data", getData());
+            try {
+                context.getResponse().setContentType("application/json;charset=UTF-8");
+                PrintWriter writer = context.getResponse().getWriter();
+                writer.write(envelope.toString());
+                writer.flush();
+            } catch (IllegalStateException e) {
+                // The request has already timed out or the client has gone away.
+                logger.debug("Log tail already completed", e);
+            } finally {
+                complete();
+            }
+        }
+
+        synchronized void complete() {
+            if (completed) {
+                return;
+            }
+            completed = true;
+            try {
+                context.complete();
+            } catch (IllegalStateException e) {
+                // Already completed.
+                logger.debug("Log tail already completed", e);
+            }
+        }
+    }
+}
@@ -1,25 +1,33 @@
 package io.jenkins.plugins.pipelinegraphview.consoleview;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import edu.umd.cs.findbugs.annotations.Nullable;
 import hudson.console.AnnotatedLargeText;
 import hudson.util.HttpResponses;
 import io.jenkins.plugins.pipelinegraphview.utils.AbstractPipelineViewAction;
+import io.jenkins.plugins.pipelinegraphview.utils.JsonResponses;
+import io.jenkins.plugins.pipelinegraphview.utils.LogLineIndex;
+import io.jenkins.plugins.pipelinegraphview.utils.PipelineGraphViewCache;
+import io.jenkins.plugins.pipelinegraphview.utils.PipelineGraphViewStore;
+import io.jenkins.plugins.pipelinegraphview.utils.PipelineLogSearch;
 import io.jenkins.plugins.pipelinegraphview.utils.PipelineNodeUtil;
+import io.jenkins.plugins.pipelinegraphview.utils.PipelineRunState;
 import io.jenkins.plugins.pipelinegraphview.utils.PipelineStep;
 import io.jenkins.plugins.pipelinegraphview.utils.PipelineStepApi;
-import io.jenkins.plugins.pipelinegraphview.utils.PipelineStepList;
+import java.io.File;
 import java.io.IOException;
 import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import net.sf.json.JSONObject;
 import org.jenkinsci.plugins.workflow.flow.FlowExecution;
 import org.jenkinsci.plugins.workflow.graph.FlowNode;
 import org.jenkinsci.plugins.workflow.job.WorkflowRun;
 import org.kohsuke.stapler.HttpResponse;
 import org.kohsuke.stapler.StaplerRequest;
-import org.kohsuke.stapler.StaplerResponse;
 import org.kohsuke.stapler.WebMethod;
-import org.kohsuke.stapler.framework.io.CharSpool;
+import org.kohsuke.stapler.framework.io.ByteBuffer;
 import org.kohsuke.stapler.framework.io.LineEndNormalizingWriter;
 import org.kohsuke.stapler.verb.GET;
 import org.slf4j.Logger;
@@ -28,13 +36,18 @@ import org.slf4j.LoggerFactory;
 public class PipelineConsoleViewAction extends AbstractPipelineViewAction {
     public static final long LOG_THRESHOLD = 150 * 1024; // 150KB
     public static final String URL_NAME = "pipeline-console";
+    // Default and maximum number of lines returned by 'consoleOutput' when asked for a window of lines.
+    public static final long LINE_WINDOW = 1000;
+    public static final long MAX_LINES = 10000;
+    // Largest number of bytes returned by a single 'consoleOutput' call - any more is left for the next call.
+    public static final long MAX_WINDOW_BYTES = 1024 * 1024; // 1MB
+    // Default number of results returned by 'search'.
+    public static final long SEARCH_LIMIT = 100;
 
     private static final Logger logger = LoggerFactory.getLogger(PipelineConsoleViewAction.class);
     private final WorkflowRun target;
     private final PipelineStepApi stepApi;
 
-    private static final ObjectMapper MAPPER = new ObjectMapper();
-
     public PipelineConsoleViewAction(WorkflowRun target) {
         super(target);
         this.target = target;
@@ -71,86 +84,97 @@ public class PipelineConsoleViewAction extends AbstractPipelineViewAction {
     public HttpResponse getSteps(StaplerRequest req) throws IOException {
         String nodeId = req.getParameter("nodeId");
         if (nodeId != null) {
-            return HttpResponses.okJSON(getSteps(nodeId));
+            logger.debug("getSteps was passed nodeId '" + nodeId + "'.");
+            return JsonResponses.okJSON(req, PipelineGraphViewCache.getETag(target), () -> stepApi.getSteps(nodeId));
         } else {
             return HttpResponses.errorJSON("Error getting console text");
         }
     }
 
-    private JSONObject getSteps(String nodeId) throws IOException {
-        logger.debug("getSteps was passed nodeId '" + nodeId + "'.");
-        PipelineStepList steps = stepApi.getSteps(nodeId);
-        String stepsJson = MAPPER.writeValueAsString(steps);
-        if (logger.isDebugEnabled()) {
-            logger.debug("Steps: '" + stepsJson + "'.");
-        }
-        return JSONObject.fromObject(stepsJson);
-    }
-
     // Return all steps to:
     // - reduce number of API calls
     // - remove dependency of getting list of stages in frontend.
     @GET
     @WebMethod(name = "allSteps")
     public HttpResponse getAllSteps(StaplerRequest req) throws IOException {
-        return HttpResponses.okJSON(getAllSteps());
+        // Completed runs are streamed from the build directory, without loading the execution.
+        File storedSteps = PipelineGraphViewStore.getOrStore(target, PipelineGraphViewStore.ALL_STEPS_FILE);
+        if (storedSteps != null) {
+            return JsonResponses.okJSON(req, storedSteps);
+        }
+        return JsonResponses.okJSON(req, PipelineGraphViewCache.getETag(target), () -> stepApi.getAllSteps());
+    }
+
+    // Return the stages and steps together, so that each update of the console view is a single
+    // request and a single scan of the run.
+    @GET
+    @WebMethod(name = "runState")
+    public HttpResponse getRunState(StaplerRequest req) throws IOException {
+        return JsonResponses.okJSON(req, PipelineGraphViewCache.getETag(target), () -> getRunState());
     }
 
     // Private method for testing.
-    protected JSONObject getAllSteps() throws IOException {
-        PipelineStepList steps = stepApi.getAllSteps();
-        String stepsJson = MAPPER.writeValueAsString(steps);
-        if (logger.isDebugEnabled()) {
-            logger.debug("Steps: '" + stepsJson + "'.");
-        }
-        return JSONObject.fromObject(stepsJson);
+    protected PipelineRunState getRunState() {
+        return PipelineRunState.of(target);
     }
 
+    /*
+     * Returns the plain text log of a stage (all of its steps' logs, in step order) or of a single
+     * step. Logs are streamed straight from storage to the client, so large logs are never held in
+     * memory.
+     */
     @WebMethod(name = "log")
-    public HttpResponse getConsoleText(StaplerRequest req, StaplerResponse rsp) throws IOException {
+    public HttpResponse getConsoleText(StaplerRequest req) throws IOException {
         String nodeId = req.getParameter("nodeId");
         if (nodeId == null) {
             logger.error("'consoleText' was not passed 'nodeId'.");
             return HttpResponses.errorJSON("Error getting console text");
         }
         logger.debug("getConsoleText was passed node id '" + nodeId + "'.");
-        // This will be a step, so return its log output.
-        AnnotatedLargeText<? extends FlowNode> logText = getLogForNode(nodeId);
-
-        long count = 0;
-        PipelineStepList steps = stepApi.getSteps(nodeId);
-        try (CharSpool spool = new CharSpool()) {
-
-            for (PipelineStep step : steps.getSteps()) {
-                AnnotatedLargeText<? extends FlowNode> logForNode = getLogForNode(String.valueOf(step.getId()));
-                if (logForNode != null) {
-                    count += logForNode.writeLogTo(0, spool);
-                }
-            }
-
-            Writer writer;
-            if (count > 0) {
-                writer = (count > 4096) ? rsp.getCompressedWriter(req) : rsp.getWriter();
-                spool.flush();
-                spool.writeTo(new LineEndNormalizingWriter(writer));
-                writer.close();
+        List<AnnotatedLargeText<? extends FlowNode>> logs = new ArrayList<>();
+        long length = 0;
+        for (PipelineStep step : stepApi.getSteps(nodeId).getSteps()) {
+            AnnotatedLargeText<? extends FlowNode> logForNode = getLogForNode(step.getId());
+            if (logForNode != null) {
+                logs.add(logForNode);
+                length += logForNode.length();
             }
         }
-
-        if (logText != null) {
-            return HttpResponses.text(PipelineNodeUtil.convertLogToString(logText));
+        if (length == 0) {
+            // No step output, so this will be a step (or a stage without output) - return its own log.
+            logs.clear();
+            AnnotatedLargeText<? extends FlowNode> logText = getLogForNode(nodeId);
+            if (logText == null) {
+                return HttpResponses.text("No logs found");
+            }
+            logs.add(logText);
+            length = logText.length();
         }
-        return HttpResponses.text("No logs found");
+        boolean compress = length > 4096;
+        return (request, response, node) -> {
+            response.setContentType("text/plain;charset=UTF-8");
+            Writer writer = compress ? response.getCompressedWriter(request) : response.getWriter();
+            try (Writer out = new LineEndNormalizingWriter(writer)) {
+                for (AnnotatedLargeText<? extends FlowNode> log : logs) {
+                    log.writeLogTo(0, out);
+                }
+            }
+        };
     }
 
     /*
      * The default behavior of this functions differs from 'getConsoleOutput' in that it will use LOG_THRESHOLD from the end of the string.
+     * If 'startLine' is given then an exact window of lines is returned instead, see 'getConsoleOutputLinesJson'.
+     * At most 'maxBytes' (up to MAX_WINDOW_BYTES) are returned, stopping before 'endByte' if given. A window that
+     * stops before the end of the log ends on a line boundary, and 'hasMore' is set so the rest can be requested
+     * from 'endByte'.
      * Note: if 'startByte' is negative and falls outside of the console text then we will start from byte 0.
      * Example:
      * {
      *   "startByte": 0,
      *   "endByte": 13,
-     *   "text": "Hello, world!"
+     *   "text": "Hello, world!",
+     *   "hasMore": false
      * }
      */
     @GET
@@ -162,23 +186,105 @@ public class PipelineConsoleViewAction extends AbstractPipelineViewAction {
             return HttpResponses.errorJSON("Error getting console json");
         }
         logger.debug("getConsoleOutput was passed node id '" + nodeId + "'.");
+        String startLine = req.getParameter("startLine");
+        if (startLine != null) {
+            long lineCount = parseIntWithDefault(req.getParameter("lineCount"), LINE_WINDOW);
+            lineCount = Math.min(Math.max(lineCount, 0), MAX_LINES);
+            JSONObject data =
+                    getConsoleOutputLinesJson(nodeId, parseIntWithDefault(startLine, -LINE_WINDOW), (int) lineCount);
+            if (data == null) {
+                return HttpResponses.errorJSON("Something went wrong - check Jenkins logs.");
+            }
+            return HttpResponses.okJSON(data);
+        }
         // This will be a step, so return it's log output.
         // startByte to start getting data from. If negative will startByte from end of string with
         // LOG_THRESHOLD.
         Long startByte = parseIntWithDefault(req.getParameter("startByte"), -LOG_THRESHOLD);
-        JSONObject data = getConsoleOutputJson(nodeId, startByte);
+        String endByteParam = req.getParameter("endByte");
+        Long endByte = endByteParam != null ? parseIntWithDefault(endByteParam, Long.MAX_VALUE) : null;
+        if (endByte != null && startByte >= 0 && endByte <= startByte) {
+            logger.error(
+                    "'consoleOutput' was passed endByte '" + endByte + "' not after startByte '" + startByte + "'.");
+            return HttpResponses.errorJSON("endByte must be greater than startByte");
+        }
+        long maxBytes = parseIntWithDefault(req.getParameter("maxBytes"), MAX_WINDOW_BYTES);
+        maxBytes = Math.min(Math.max(maxBytes, 1), MAX_WINDOW_BYTES);
+        JSONObject data = getConsoleOutputJson(nodeId, startByte, endByte, maxBytes);
         if (data == null) {
             return HttpResponses.errorJSON("Something went wrong - check Jenkins logs.");
         }
         return HttpResponses.okJSON(data);
     }
 
+    /*
+     * Searches the logs of every step of the run for lines containing 'q', returning the first 'limit'
+     * (default 100, at most 1000) in step order. Case is ignored unless passed 'ignoreCase=false'.
+     * Results are streamed as they are found. "truncated" is set if there were more matches.
+     * Example:
+     * {
+     *   "results": [{"stepId": "7", "byteOffset": 1024, "line": "error: something went wrong"}],
+     *   "truncated": false
+     * }
+     */
+    @GET
+    @WebMethod(name = "search")
+    public HttpResponse getSearch(StaplerRequest req) {
+        String query = req.getParameter("q");
+        if (query == null || query.isEmpty()) {
+            logger.error("'search' was not passed 'q'.");
+            return HttpResponses.errorJSON("Error searching logs");
+        }
+        boolean ignoreCase = !"false".equals(req.getParameter("ignoreCase"));
+        long limit = parseIntWithDefault(req.getParameter("limit"), SEARCH_LIMIT);
+        int resultLimit = (int) Math.min(Math.max(limit, 1), PipelineLogSearch.MAX_RESULTS);
+        return JsonResponses.okJSONStream(generator -> {
+            generator.writeStartObject();
+            generator.writeArrayFieldStart("results");
+            boolean truncated = PipelineLogSearch.search(target, query, ignoreCase, resultLimit, match -> {
+                generator.writeObject(match);
+                generator.flush();
+            });
+            generator.writeEndArray();
+            generator.writeBooleanField("truncated", truncated);
+            generator.writeEndObject();
+        });
+    }
+
+    /*
+     * Waits for the step to write output after 'startByte', then returns it in the same form as
+     * 'consoleOutput', with "complete" set once the step has finished. Returns straight away if there
+     * is already output after 'startByte', or after 'timeoutMillis' (at most 30s) if none is written.
+     * The request is held asynchronously, so waiting doesn't use a request thread.
+     */
+    @GET
+    @WebMethod(name = "tail")
+    public HttpResponse getTail(StaplerRequest req) throws IOException {
+        String nodeId = req.getParameter("nodeId");
+        if (nodeId == null) {
+            logger.error("'tail' was not passed 'nodeId'.");
+            return HttpResponses.errorJSON("Error getting console json");
+        }
+        long startByte = Math.max(0, parseIntWithDefault(req.getParameter("startByte"), 0));
+        long timeoutMillis = parseIntWithDefault(req.getParameter("timeoutMillis"), LogTail.MAX_TIMEOUT_MILLIS);
+        timeoutMillis = Math.min(Math.max(timeoutMillis, 0), LogTail.MAX_TIMEOUT_MILLIS);
+        return LogTail.tail(this, nodeId, startByte, timeoutMillis);
+    }
+
     protected JSONObject getConsoleOutputJson(String nodeId, Long requestStartByte) throws IOException {
+        return getConsoleOutputJson(nodeId, requestStartByte, null, MAX_WINDOW_BYTES);
+    }
+
+    protected JSONObject getConsoleOutputJson(
+            String nodeId, Long requestStartByte, @Nullable Long requestEndByte, long maxBytes)
+            throws IOException {
         Long startByte = 0L;
         long endByte = 0L;
         long textLength;
         String text = "";
-        AnnotatedLargeText<? extends FlowNode> logText = getLogForNode(nodeId);
+        boolean hasMore = false;
+        FlowNode node = getNode(nodeId);
+        AnnotatedLargeText<? extends FlowNode> logText = PipelineNodeUtil.getLogText(node);
 
         if (logText != null) {
             textLength = logText.length();
@@ -201,12 +307,22 @@ public class PipelineConsoleViewAction extends AbstractPipelineViewAction {
             } else {
                 startByte = requestStartByte;
             }
-            logger.debug("Returning '" + (textLength - startByte) + "' bytes from 'getConsoleOutput'.");
-            text = PipelineNodeUtil.convertLogToString(logText, startByte, true);
-            endByte = textLength;
+            long windowEnd = Math.min(textLength, startByte + maxBytes);
+            if (requestEndByte != null) {
+                windowEnd = Math.min(windowEnd, Math.max(requestEndByte, startByte));
+            }
+            // Only read up to the end of the window, even if the log has grown since we got its length,
+            // so the text never goes past the 'endByte' we report.
+            ByteBuffer window = PipelineNodeUtil.readLogWindow(logText, startByte, windowEnd);
+            logger.debug("Returning '" + window.length() + "' of '" + (textLength - startByte)
+                    + "' bytes from 'getConsoleOutput'.");
+            text = renderHtml(node, window);
+            endByte = startByte + window.length();
+            // An empty window (e.g. 'endByte' before a negative 'startByte') can't make progress.
+            hasMore = windowEnd < textLength && window.length() > 0;
         }
-        // If has an exception, return the exception text (inc. stacktrace).
-        if (isUnhandledException(nodeId)) {
+        // If has an exception, return the exception text (inc. stacktrace) once the whole log has been returned.
+        if (!hasMore && isUnhandledException(nodeId)) {
             // Set logText to exception text. This is a little hacky - maybe it would be better update the
             // frontend to handle steps and exceptions differently?
             String nodeExceptionText = getNodeExceptionText(nodeId);
@@ -219,9 +335,76 @@ public class PipelineConsoleViewAction extends AbstractPipelineViewAction {
         response.put("text", text);
         response.put("startByte", startByte);
         response.put("endByte", endByte);
+        response.put("hasMore", hasMore);
+        return JSONObject.fromObject(response);
+    }
+
+    /*
+     * Returns up to 'lineCount' lines of the log of a step, starting at line 'startLine' (counting from 0).
+     * A negative 'startLine' counts back from the end of the log. Lines are found with the step's
+     * LogLineIndex, so only the requested lines are read, however large the log is.
+     * Example:
+     * {
+     *   "startLine": 2000000,
+     *   "endLine": 2001000,
+     *   "lineCount": 3000000,
+     *   "startByte": 160000000,
+     *   "endByte": 160080000,
+     *   "text": "..."
+     * }
+     */
+    protected JSONObject getConsoleOutputLinesJson(String nodeId, long startLine, int lineCount) throws IOException {
+        if (target.getExecution() == null) {
+            return null;
+        }
+        FlowNode node = getNode(nodeId);
+        AnnotatedLargeText<? extends FlowNode> logText = PipelineNodeUtil.getLogText(node);
+        HashMap<String, Object> response = new HashMap<>();
+        String text = "";
+        if (logText != null) {
+            LogLineIndex index = LogLineIndex.forStep(target, nodeId, logText);
+            LogLineIndex.Window window = index.read(logText, startLine, lineCount);
+            logger.debug("Returning lines '" + window.getStartLine() + "' to '" + window.getEndLine()
+                    + "' from 'getConsoleOutput'.");
+            text = renderHtml(node, window.getBytes());
+            response.put("startLine", window.getStartLine());
+            response.put("endLine", window.getEndLine());
+            response.put("lineCount", window.getLineCount());
+            response.put("startByte", window.getStartByte());
+            response.put("endByte", window.getEndByte());
+            if (window.getEndLine() == window.getLineCount() && isUnhandledException(nodeId)) {
+                text += getExceptionTextOrEmpty(nodeId);
+            }
+        } else {
+            response.put("startLine", 0L);
+            response.put("endLine", 0L);
+            response.put("lineCount", 0L);
+            response.put("startByte", 0L);
+            response.put("endByte", 0L);
+            if (isUnhandledException(nodeId)) {
+                text += getExceptionTextOrEmpty(nodeId);
+            }
+        }
+        response.put("text", text);
         return JSONObject.fromObject(response);
     }
 
+    // Renders raw log bytes read from the log of 'node' the same way as 'convertLogToString'.
+    private static String renderHtml(FlowNode node, ByteBuffer bytes) throws IOException {
+        return PipelineNodeUtil.convertLogToString(
+                new AnnotatedLargeText<>(bytes, StandardCharsets.UTF_8, true, node), 0L, true);
+    }
+
+    private String getExceptionTextOrEmpty(String nodeId) throws IOException {
+        String nodeExceptionText = getNodeExceptionText(nodeId);
+        return nodeExceptionText != null ? nodeExceptionText : "";
+    }
+
+    FlowNode getNode(String nodeId) throws IOException {
+        FlowExecution execution = target.getExecution();
+        return execution != null ? execution.getNode(nodeId) : null;
+    }
+
     private AnnotatedLargeText<? extends FlowNode> getLogForNode(String nodeId) throws IOException {
         FlowExecution execution = target.getExecution();
         if (execution != null) {
@@ -1,18 +1,14 @@
 package io.jenkins.plugins.pipelinegraphview.multipipelinegraphview;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import hudson.model.Action;
 import hudson.security.Permission;
-import hudson.util.HttpResponses;
 import hudson.util.RunList;
 import io.jenkins.plugins.pipelinegraphview.PipelineGraphViewConfiguration;
-import io.jenkins.plugins.pipelinegraphview.utils.PipelineGraph;
+import io.jenkins.plugins.pipelinegraphview.utils.JsonResponses;
 import io.jenkins.plugins.pipelinegraphview.utils.PipelineGraphApi;
+import io.jenkins.plugins.pipelinegraphview.utils.PipelineGraphViewCache;
 import java.util.ArrayList;
 import java.util.List;
-import net.sf.json.JSONArray;
-import net.sf.json.JSONObject;
 import org.jenkins.ui.icon.IconSpec;
 import org.jenkinsci.plugins.workflow.job.WorkflowJob;
 import org.jenkinsci.plugins.workflow.job.WorkflowRun;
@@ -22,7 +18,6 @@ import org.kohsuke.stapler.WebMethod;
 import org.kohsuke.stapler.verb.GET;
 
 public class MultiPipelineGraphViewAction implements Action, IconSpec {
-    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
     private static final int MaxNumberOfElements = 10;
 
     private final WorkflowJob target;
@@ -53,35 +48,23 @@ public class MultiPipelineGraphViewAction implements Action, IconSpec {
 
     @GET
     @WebMethod(name = "tree")
-    public HttpResponse getTree(StaplerRequest req) throws JsonProcessingException {
+    public HttpResponse getTree(StaplerRequest req) {
         String runId = req.getParameter("runId");
         WorkflowRun run = target.getBuildByNumber(Integer.parseInt(runId));
         PipelineGraphApi api = new PipelineGraphApi(run);
-        JSONObject graph = createGraphJson(api.createTree());
-        return HttpResponses.okJSON(graph);
-    }
-
-    protected JSONObject createGraphJson(PipelineGraph pipelineGraph) throws JsonProcessingException {
-        String graph = OBJECT_MAPPER.writeValueAsString(pipelineGraph);
-        return JSONObject.fromObject(graph);
+        return JsonResponses.okJSON(req, PipelineGraphViewCache.getETag(run), () -> api.createTree());
     }
 
     @GET
     @WebMethod(name = "runs")
-    public HttpResponse getRuns() throws JsonProcessingException {
+    public HttpResponse getRuns() {
         RunList<WorkflowRun> runs = target.getBuilds();
         List<PipelineRun> pipelineRuns = new ArrayList<>();
         for (WorkflowRun run : runs) {
             pipelineRuns.add(new PipelineRun(run));
             if (pipelineRuns.size() >= MaxNumberOfElements) break;
         }
-        JSONArray graph = createJson(pipelineRuns);
-        return HttpResponses.okJSON(graph);
-    }
-
-    protected JSONArray createJson(List<PipelineRun> pipelineRuns) throws JsonProcessingException {
-        String graph = OBJECT_MAPPER.writeValueAsString(pipelineRuns);
-        return JSONArray.fromObject(graph);
+        return JsonResponses.okJSON(pipelineRuns);
     }
 
     @Override
@@ -0,0 +1,87 @@
+package io.jenkins.plugins.pipelinegraphview.treescanner;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Debug logging for the tree scanner, which must cost nothing when debug logging is disabled.
+ * The scanner logs from loops that run for every node (or every enclosing block of every node), so
+ * there are fixed-arity overloads that don't allocate a varargs array, and messages are only
+ * formatted once we know they will be logged. Primitive arguments have their own overloads, so they
+ * aren't boxed either. Callers must not build arguments eagerly (e.g. by joining or dumping
+ * collections) - guard those with {@link #isEnabled()} instead.
+ */
+final class DebugLog {
+    private final Logger logger;
+
+    DebugLog(Class<?> clazz) {
+        this.logger = LoggerFactory.getLogger(clazz);
+    }
+
+    // Checked on each call, so changes to the log level take effect straight away.
+    boolean isEnabled() {
+        return logger.isDebugEnabled();
+    }
+
+    void dump(String message) {
+        if (isEnabled()) {
+            logger.debug(message);
+        }
+    }
+
+    void dump(String message, Object arg) {
+        if (isEnabled()) {
+            logger.debug(String.format(message, arg));
+        }
+    }
+
+    void dump(String message, Object arg1, Object arg2) {
+        if (isEnabled()) {
+            logger.debug(String.format(message, arg1, arg2));
+        }
+    }
+
+    void dump(String message, Object arg1, Object arg2, Object arg3) {
+        if (isEnabled()) {
+            logger.debug(String.format(message, arg1, arg2, arg3));
+        }
+    }
+
+    void dump(String message, Object arg1, Object arg2, Object arg3, Object arg4) {
+        if (isEnabled()) {
+            logger.debug(String.format(message, arg1, arg2, arg3, arg4));
+        }
+    }
+
+    // Counts and IDs are passed as primitives, so they are only boxed once we know they will be logged.
+    void dump(String message, long arg) {
+        if (isEnabled()) {
+            logger.debug(String.format(message, arg));
+        }
+    }
+
+    void dump(String message, long arg1, long arg2) {
+        if (isEnabled()) {
+            logger.debug(String.format(message, arg1, arg2));
+        }
+    }
+
+    void dump(String message, long arg1, Object arg2) {
+        if (isEnabled()) {
+            logger.debug(String.format(message, arg1, arg2));
+        }
+    }
+
+    void dump(String message, long arg1, Object arg2, Object arg3) {
+        if (isEnabled()) {
+            logger.debug(String.format(message, arg1, arg2, arg3));
+        }
+    }
+
+    // Allocates the varargs array, so avoid in loops unless guarded by 'isEnabled'.
+    void dump(String message, Object... args) {
+        if (isEnabled()) {
+            logger.debug(String.format(message, args));
+        }
+    }
+}
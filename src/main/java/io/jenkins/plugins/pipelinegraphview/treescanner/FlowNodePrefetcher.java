@@ -0,0 +1,139 @@
+package io.jenkins.plugins.pipelinegraphview.treescanner;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import jenkins.util.SystemProperties;
+import org.jenkinsci.plugins.workflow.actions.LabelAction;
+import org.jenkinsci.plugins.workflow.actions.ThreadNameAction;
+import org.jenkinsci.plugins.workflow.actions.TimingAction;
+import org.jenkinsci.plugins.workflow.flow.FlowExecution;
+import org.jenkinsci.plugins.workflow.graph.FlowNode;
+
+/**
+ * Loads the FlowNodes of an execution (and the actions the scanner reads from them) in parallel,
+ * before the graph is walked.
+ * With per-node storage every node the scanner visits for the first time is a synchronous disk
+ * read and deserialization on the request thread. Node IDs are dense integers up to the highest
+ * head, so we can load them from storage in parallel on a small, bounded pool. The single-threaded
+ * walk that follows then finds them in the storage cache.
+ * This is only an optimisation - any failure just means the scanner loads the node itself.
+ */
+class FlowNodePrefetcher {
+    private static final DebugLog log = new DebugLog(FlowNodePrefetcher.class);
+
+    private static final int THREADS = SystemProperties.getInteger(
+            FlowNodePrefetcher.class.getName() + ".threads",
+            Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+    // Small graphs load quickly enough that handing them to other threads isn't worth it.
+    static final String MIN_NODES_PROPERTY = FlowNodePrefetcher.class.getName() + ".minNodes";
+
+    // Don't hold up the request for longer than this - the scanner will load anything left itself.
+    private static final long TIMEOUT_MILLIS =
+            SystemProperties.getLong(FlowNodePrefetcher.class.getName() + ".timeoutMillis", 30000L);
+
+    private static ThreadPoolExecutor executor;
+
+    private FlowNodePrefetcher() {}
+
+    private static synchronized ThreadPoolExecutor getExecutor() {
+        if (executor == null) {
+            // Threads are created on demand and die when idle.
+            executor = new ThreadPoolExecutor(
+                    THREADS,
+                    THREADS,
+                    60,
+                    TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(),
+                    new NamingThreadFactory(new DaemonThreadFactory(), "PipelineGraphView FlowNode prefetch"));
+            executor.allowCoreThreadTimeOut(true);
+        }
+        return executor;
+    }
+
+    // Returns false if prefetching is turned off, as it is when there is only one thread to do it on.
+    static boolean isEnabled() {
+        return THREADS > 1;
+    }
+
+    // Read on each call, so it can be changed without a restart.
+    private static int getMinNodes() {
+        return SystemProperties.getInteger(MIN_NODES_PROPERTY, 500);
+    }
+
+    /*
+     * Loads the nodes of the given execution, up to and including the given heads, into its storage
+     * cache. Returns once they are loaded (or the timeout is reached).
+     */
+    static void prefetch(@NonNull FlowExecution execution, @NonNull List<FlowNode> heads) {
+        if (!isEnabled()) {
+            return;
+        }
+        int maxId = -1;
+        for (FlowNode head : heads) {
+            maxId = Math.max(maxId, NodeIndex.parseId(head.getId()));
+        }
+        if (maxId < getMinNodes()) {
+            return;
+        }
+        log.dump("Prefetching %s nodes on %s threads", maxId, THREADS);
+        // Each task loads every THREADS'th ID, so work is spread evenly even if some parts of the
+        // graph are more expensive to load than others.
+        List<Future<?>> futures = new ArrayList<>(THREADS);
+        int lastId = maxId;
+        for (int t = 0; t < THREADS; t++) {
+            int firstId = t;
+            futures.add(getExecutor().submit(() -> {
+                for (int id = firstId; id <= lastId; id += THREADS) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        return;
+                    }
+                    load(execution, id);
+                }
+            }));
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(TIMEOUT_MILLIS);
+        try {
+            for (Future<?> future : futures) {
+                future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancel(futures);
+        } catch (ExecutionException | TimeoutException e) {
+            log.dump("Prefetch did not complete: %s", e);
+            cancel(futures);
+        }
+    }
+
+    private static void cancel(List<Future<?>> futures) {
+        for (Future<?> future : futures) {
+            future.cancel(true);
+        }
+    }
+
+    private static void load(FlowExecution execution, int id) {
+        try {
+            FlowNode node = execution.getNode(String.valueOf(id));
+            if (node != null) {
+                // Actions are loaded separately from the node, so load the ones the scanner reads.
+                node.getPersistentAction(LabelAction.class);
+                node.getPersistentAction(ThreadNameAction.class);
+                node.getPersistentAction(TimingAction.class);
+            }
+        } catch (IOException | RuntimeException e) {
+            // Not all IDs exist - the scanner will report any real problems when it loads the node.
+            log.dump("Failed to prefetch node %s: %s", id, e);
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package io.jenkins.plugins.pipelinegraphview.treescanner;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.ExtensionList;
+import io.jenkins.plugins.pipelinegraphview.utils.NodeRunStatus;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.jenkinsci.plugins.workflow.flow.FlowExecution;
+import org.jenkinsci.plugins.workflow.flow.GraphListener;
+import org.jenkinsci.plugins.workflow.graph.FlowEndNode;
+import org.jenkinsci.plugins.workflow.graph.FlowNode;
+import org.jenkinsci.plugins.workflow.graphanalysis.DepthFirstScanner;
+import org.jenkinsci.plugins.workflow.pipelinegraphanalysis.TimingInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Per-run model of the nodes in a running Pipeline.
+ * The first time a running build is scanned the model is seeded by walking the graph from the
+ * current heads. After that new nodes are appended as the execution reports them through
+ * {@link GraphListener#onNewHead(FlowNode)}, so later scans of the same run don't walk (and load
+ * from) the FlowNode storage again.
+ * The model also remembers the status and timing of nodes and blocks that have closed, as these
+ * can no longer change. Each scan then only computes them for the nodes that are still active.
+ * Only this part of a scan is incremental: the node index, relationships and graph are still
+ * rebuilt from every node in the model on each scan, so a scan costs time in proportion to the
+ * size of the whole graph, not to the number of nodes added since the last one. Relationships are
+ * found in a backwards pass, where new nodes can change the relationships of existing ones, so
+ * they can't simply be extended.
+ * Models are only kept for running builds that are being viewed, and are dropped once the
+ * execution ends - completed runs are scanned once and cached.
+ */
+public class IncrementalGraphModel {
+    private static final Logger logger = LoggerFactory.getLogger(IncrementalGraphModel.class);
+    private static final DebugLog log = new DebugLog(IncrementalGraphModel.class);
+
+    // Maps a node ID to a given node. Guarded by 'this'.
+    private final LinkedHashMap<String, FlowNode> nodeMap = new LinkedHashMap<>();
+
+    // Maps the ID of a closed node (or the start node of a closed block) to its final status and timing.
+    private final ConcurrentMap<String, ClosedNode> closedNodes = new ConcurrentHashMap<>();
+
+    private final Object seedLock = new Object();
+    private volatile boolean seeded = false;
+
+    IncrementalGraphModel() {}
+
+    /*
+     * Returns the model for the given execution, creating and seeding it if required.
+     * Returns null for complete executions (or if the run can't be identified) - these should be
+     * scanned directly.
+     */
+    @CheckForNull
+    public static IncrementalGraphModel forExecution(@NonNull FlowExecution execution) {
+        if (execution.isComplete()) {
+            return null;
+        }
+        IncrementalGraphModel model = ExtensionList.lookupSingleton(Listener.class).getOrCreate(execution);
+        if (model != null) {
+            model.seed(execution);
+        }
+        return model;
+    }
+
+    /*
+     * Walks the graph from the current heads. This only happens once per model, any nodes found by
+     * the listener in the meantime are kept.
+     */
+    private void seed(@NonNull FlowExecution execution) {
+        if (seeded) {
+            return;
+        }
+        synchronized (seedLock) {
+            if (seeded) {
+                return;
+            }
+            final DepthFirstScanner scanner = new DepthFirstScanner();
+            scanner.setup(execution.getCurrentHeads());
+            List<FlowNode> foundNodes = new ArrayList<>();
+            for (FlowNode n : scanner) {
+                foundNodes.add(n);
+            }
+            synchronized (this) {
+                for (FlowNode n : foundNodes) {
+                    nodeMap.putIfAbsent(n.getId(), n);
+                }
+            }
+            log.dump("Seeded model with %s nodes", foundNodes.size());
+            seeded = true;
+        }
+    }
+
+    /*
+     * Appends a new node to the model.
+     */
+    synchronized void addNode(@NonNull FlowNode node) {
+        nodeMap.putIfAbsent(node.getId(), node);
+    }
+
+    /*
+     * Returns a point in time copy of the nodes in the model.
+     */
+    @NonNull
+    public synchronized LinkedHashMap<String, FlowNode> getNodes() {
+        return new LinkedHashMap<>(nodeMap);
+    }
+
+    /*
+     * Returns a point in time copy of the nodes in the model, without their IDs.
+     */
+    @NonNull
+    public synchronized List<FlowNode> getNodeList() {
+        return new ArrayList<>(nodeMap.values());
+    }
+
+    /*
+     * Returns the final status and timing of the given closed node, or null if it isn't known
+     * (or the node hasn't closed).
+     */
+    @CheckForNull
+    ClosedNode getClosedNode(@NonNull String id) {
+        return closedNodes.get(id);
+    }
+
+    /*
+     * Records the final status and timing of a node that has closed.
+     */
+    void putClosedNode(@NonNull String id, @NonNull NodeRunStatus status, @NonNull TimingInfo timing) {
+        closedNodes.putIfAbsent(id, new ClosedNode(status, timing));
+    }
+
+    /*
+     * The status and timing of a node or block that can no longer change.
+     */
+    static final class ClosedNode {
+        @NonNull
+        final NodeRunStatus status;
+
+        @NonNull
+        final TimingInfo timing;
+
+        ClosedNode(@NonNull NodeRunStatus status, @NonNull TimingInfo timing) {
+            this.status = status;
+            this.timing = timing;
+        }
+    }
+
+    /*
+     * Gets a key for the run that owns this execution.
+     */
+    @CheckForNull
+    private static String getKey(@NonNull FlowExecution execution) {
+        try {
+            return execution.getOwner().getUrl();
+        } catch (IOException e) {
+            logger.warn("Could not get URL for owner of execution " + execution, e);
+            return null;
+        }
+    }
+
+    /**
+     * Appends new nodes to the models of running builds that are being viewed.
+     * This is synchronous so nodes are added in the order the execution creates them, which means it
+     * must stay cheap - it only ever does a map lookup and insert.
+     */
+    @Extension
+    public static class Listener implements GraphListener.Synchronous {
+        // Models are dropped when the execution ends, but also expire in case we never see the end node
+        // (e.g. the run is deleted whilst running).
+        private final Cache<String, IncrementalGraphModel> models =
+                CacheBuilder.newBuilder().expireAfterAccess(30, TimeUnit.MINUTES).build();
+
+        @CheckForNull
+        IncrementalGraphModel getOrCreate(@NonNull FlowExecution execution) {
+            String key = getKey(execution);
+            if (key == null) {
+                return null;
+            }
+            try {
+                return models.get(key, IncrementalGraphModel::new);
+            } catch (ExecutionException e) {
+                logger.warn("Could not create graph model for " + key, e);
+                return null;
+            }
+        }
+
+        @Override
+        public void onNewHead(FlowNode node) {
+            if (models.size() == 0) {
+                return;
+            }
+            FlowExecution execution = node.getExecution();
+            String key = getKey(execution);
+            if (key == null) {
+                return;
+            }
+            if (node instanceof FlowEndNode) {
+                // The execution is complete, so scans will go via the cache instead.
+                models.invalidate(key);
+                return;
+            }
+            IncrementalGraphModel model = models.getIfPresent(key);
+            if (model != null) {
+                model.addNode(node);
+            }
+        }
+    }
+}
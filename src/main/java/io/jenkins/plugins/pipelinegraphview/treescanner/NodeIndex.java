@@ -0,0 +1,121 @@
+package io.jenkins.plugins.pipelinegraphview.treescanner;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import io.jenkins.plugins.pipelinegraphview.utils.FlowNodeFlags;
+import java.util.Arrays;
+import java.util.Collection;
+import org.jenkinsci.plugins.workflow.graph.FlowNode;
+
+/**
+ * Integer-indexed view of a set of FlowNodes.
+ * FlowNode IDs are dense integers, so each ID is parsed once and the nodes are given a position
+ * in ID order. Scanning code can then key its state by position using plain arrays, rather than
+ * hashing and re-parsing the String IDs in maps and comparators.
+ * The index also records the first enclosing block of each node, read from the FlowNode once when
+ * the index is built. Walking up the enclosing blocks of a node is then an array lookup per level,
+ * rather than a storage read and a new list for every call to
+ * {@link FlowNode#getEnclosingBlocks()} or {@link FlowNode#getAllEnclosingIds()}.
+ * Likewise each node is classified by its actions once (see {@link FlowNodeFlags}), rather than
+ * every check reading them again.
+ */
+class NodeIndex {
+    // Nodes sorted by ID.
+    private final FlowNode[] nodes;
+    // The parsed ID of the node at each position.
+    private final int[] ids;
+    // Maps a parsed ID to the position of that node, or -1 if the node isn't in the index.
+    private final int[] positions;
+    // The position of the first enclosing block of the node at each position, or -1 if it has none.
+    // Enclosing blocks are always ancestors of a node, so are in any set of nodes found by walking
+    // back from the heads.
+    private final int[] enclosing;
+    // The FlowNodeFlags of the node at each position.
+    private final int[] flags;
+
+    private NodeIndex(FlowNode[] nodes, int[] ids, int[] positions) {
+        this.nodes = nodes;
+        this.ids = ids;
+        this.positions = positions;
+        this.enclosing = new int[nodes.length];
+        this.flags = new int[nodes.length];
+        for (int pos = 0; pos < nodes.length; pos++) {
+            enclosing[pos] = positionOf(nodes[pos].getEnclosingId());
+            flags[pos] = FlowNodeFlags.of(nodes[pos]);
+        }
+    }
+
+    @NonNull
+    static NodeIndex of(@NonNull Collection<FlowNode> nodeCollection) {
+        int size = nodeCollection.size();
+        // Sort by ID using packed (id, original index) longs, so each ID is only parsed once.
+        FlowNode[] unsorted = nodeCollection.toArray(new FlowNode[0]);
+        long[] keys = new long[size];
+        int maxId = -1;
+        for (int i = 0; i < size; i++) {
+            int id = parseId(unsorted[i].getId());
+            maxId = Math.max(maxId, id);
+            keys[i] = ((long) id << 32) | i;
+        }
+        Arrays.sort(keys);
+        FlowNode[] nodes = new FlowNode[size];
+        int[] ids = new int[size];
+        int[] positions = new int[maxId + 1];
+        Arrays.fill(positions, -1);
+        for (int pos = 0; pos < size; pos++) {
+            int id = (int) (keys[pos] >>> 32);
+            nodes[pos] = unsorted[(int) keys[pos]];
+            ids[pos] = id;
+            positions[id] = pos;
+        }
+        return new NodeIndex(nodes, ids, positions);
+    }
+
+    static int parseId(@NonNull String id) {
+        return Integer.parseInt(id);
+    }
+
+    int size() {
+        return nodes.length;
+    }
+
+    @NonNull
+    FlowNode get(int position) {
+        return nodes[position];
+    }
+
+    int idAt(int position) {
+        return ids[position];
+    }
+
+    int flagsAt(int position) {
+        return flags[position];
+    }
+
+    /*
+     * Returns the position of the node with the given ID, or -1 if it isn't in the index.
+     */
+    int positionOf(int id) {
+        return id >= 0 && id < positions.length ? positions[id] : -1;
+    }
+
+    /*
+     * Returns the position of the node with the given ID, or -1 if it isn't in the index (or the ID
+     * is null).
+     */
+    int positionOf(@CheckForNull String id) {
+        return id == null ? -1 : positionOf(parseId(id));
+    }
+
+    int positionOf(@NonNull FlowNode node) {
+        return positionOf(node.getId());
+    }
+
+    /*
+     * Returns the position of the first enclosing block of the node at the given position, or -1 if
+     * it has none. Pass the result back in to walk up through all the enclosing blocks.
+     */
+    int enclosingPositionOf(int position) {
+        return position < 0 ? -1 : enclosing[position];
+    }
+}
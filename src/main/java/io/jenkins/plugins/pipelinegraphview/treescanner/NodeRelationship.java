@@ -5,17 +5,15 @@ import edu.umd.cs.findbugs.annotations.NonNull;
 import io.jenkins.plugins.pipelinegraphview.utils.BlueRun;
 import io.jenkins.plugins.pipelinegraphview.utils.NodeRunStatus;
 import io.jenkins.plugins.pipelinegraphview.utils.PipelineNodeUtil;
+import org.jenkinsci.plugins.workflow.graph.BlockStartNode;
 import org.jenkinsci.plugins.workflow.graph.FlowNode;
 import org.jenkinsci.plugins.workflow.job.WorkflowRun;
 import org.jenkinsci.plugins.workflow.pipelinegraphanalysis.StatusAndTiming;
 import org.jenkinsci.plugins.workflow.pipelinegraphanalysis.TimingInfo;
 import org.jenkinsci.plugins.workflow.support.actions.PauseAction;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 public class NodeRelationship {
-    private boolean isDebugEnabled = logger.isDebugEnabled();
-    private static final Logger logger = LoggerFactory.getLogger(NodeRelationship.class);
+    private static final DebugLog log = new DebugLog(NodeRelationship.class);
 
     @NonNull
     protected FlowNode start;
@@ -37,13 +35,6 @@ public class NodeRelationship {
         this.end = end;
     }
 
-    // Print debug message if 'isDebugEnabled' is true.
-    protected void dump(String message, Object... args) {
-        if (isDebugEnabled) {
-            logger.debug(String.format(message, args));
-        }
-    }
-
     /*
      * Returns the recorded node that was run before this node
      * Returns null if unset (e.g.)
@@ -87,12 +78,24 @@ public class NodeRelationship {
         return this.end;
     }
 
+    /*
+     * Returns true if the status and timing of this relationship can no longer change - i.e. the
+     * node (or block) has finished and the node after it exists.
+     */
+    public boolean isClosed() {
+        if (this.after == null) {
+            return false;
+        }
+        // Running blocks use their start node as the end node.
+        return !(this.start instanceof BlockStartNode) || this.start != this.end;
+    }
+
     /*
      * Gets TimingInfo for relationship.
      */
     public @NonNull TimingInfo getTimingInfo(@NonNull WorkflowRun run) {
         long pause = PauseAction.getPauseDuration(this.start);
-        dump(
+        log.dump(
                 "Calculating Chunk Timing info start: %s, end: %s after: %s",
                 this.start.getId(), this.end.getId(), (this.after != null) ? this.after.getId() : "null");
         TimingInfo timing = StatusAndTiming.computeChunkTiming(run, pause, this.start, this.end, this.after);
@@ -112,7 +115,7 @@ public class NodeRelationship {
         } else if (PipelineNodeUtil.isPaused(this.end)) {
             return new NodeRunStatus(BlueRun.BlueRunResult.UNKNOWN, BlueRun.BlueRunState.PAUSED);
         }
-        dump(
+        log.dump(
                 "Calculating Chunk Status start: %s, end: %s after: %s",
                 this.start.getId(), this.end.getId(), (this.after != null) ? this.after.getId() : "null");
         // Catch-all if none of the above are applicable.
@@ -2,26 +2,23 @@ package io.jenkins.plugins.pipelinegraphview.treescanner;
 
 import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.NonNull;
+import io.jenkins.plugins.pipelinegraphview.utils.FlowNodeFlags;
 import io.jenkins.plugins.pipelinegraphview.utils.FlowNodeWrapper;
-import io.jenkins.plugins.pipelinegraphview.utils.PipelineNodeUtil;
 import java.util.ArrayDeque;
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.LinkedHashMap;
-import java.util.List;
-import java.util.Map;
 import org.jenkinsci.plugins.workflow.cps.nodes.StepAtomNode;
 import org.jenkinsci.plugins.workflow.graph.BlockEndNode;
-import org.jenkinsci.plugins.workflow.graph.BlockStartNode;
 import org.jenkinsci.plugins.workflow.graph.FlowNode;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 public class NodeRelationshipFinder {
-    private static final Logger logger = LoggerFactory.getLogger(NodeRelationshipFinder.class);
-    private boolean isDebugEnabled = logger.isDebugEnabled();
+    private static final DebugLog log = new DebugLog(NodeRelationshipFinder.class);
 
-    private LinkedHashMap<String, FlowNode> endNodes = new LinkedHashMap<>();
+    // State is kept in arrays indexed by the position of nodes in 'index', rather than in maps
+    // keyed by node ID.
+    private NodeIndex index;
+
+    // Maps the position of a block start node to its end node.
+    private FlowNode[] endNodes;
 
     /* Stack of stacks to store the last seen node for each nested block we have gone into.
      * Used to assign the after node for relationships.
@@ -31,7 +28,8 @@ public class NodeRelationshipFinder {
      *    - This might be a AtomNode or a BlockStartNode (when a step is followed by a StepBlock).
      */
     private ArrayDeque<ArrayDeque<FlowNode>> lastSeenNodes = new ArrayDeque<>();
-    private Map<String, ArrayDeque<FlowNode>> seenChildNodes = new LinkedHashMap<>();
+    // Maps the position of a block start node to the child nodes we have seen so far.
+    private ArrayDeque<FlowNode>[] seenChildNodes;
 
     /*  Somewhere to temporarily store the parallel branches information whilst we
      * are handing a parallel block.
@@ -40,14 +38,8 @@ public class NodeRelationshipFinder {
      */
     private ArrayDeque<NodeRelationship> pendingBranchRelationships = new ArrayDeque<>();
 
-    private LinkedHashMap<String, NodeRelationship> relationships = new LinkedHashMap<>();
-
-    // Print debug message if 'isDebugEnabled' is true.
-    private void dump(String message, Object... args) {
-        if (isDebugEnabled) {
-            logger.debug(String.format(message, args));
-        }
-    }
+    // Maps the position of a node to its relationship.
+    private NodeRelationship[] relationships;
 
     public NodeRelationshipFinder() {}
 
@@ -57,19 +49,40 @@ public class NodeRelationshipFinder {
     @NonNull
     public LinkedHashMap<String, NodeRelationship> getNodeRelationships(
             @NonNull LinkedHashMap<String, FlowNode> nodeMap) {
-        dump("Original Ids: %s", String.join(", ", nodeMap.keySet()));
+        NodeIndex nodeIndex = NodeIndex.of(nodeMap.values());
+        NodeRelationship[] found = getNodeRelationships(nodeIndex);
+        LinkedHashMap<String, NodeRelationship> relationshipMap = new LinkedHashMap<>();
+        for (int pos = 0; pos < found.length; pos++) {
+            if (found[pos] != null) {
+                relationshipMap.put(nodeIndex.get(pos).getId(), found[pos]);
+            }
+        }
+        return relationshipMap;
+    }
+
+    /*
+     * Determines the relationships between the nodes in the given index. The returned array is
+     * indexed by node position, and holds null for nodes without a relationship.
+     */
+    @SuppressWarnings("unchecked")
+    @NonNull
+    NodeRelationship[] getNodeRelationships(@NonNull NodeIndex nodeIndex) {
+        this.index = nodeIndex;
+        int size = nodeIndex.size();
+        this.endNodes = new FlowNode[size];
+        this.seenChildNodes = new ArrayDeque[size];
+        this.relationships = new NodeRelationship[size];
         // This is important, determining the the relationships depends on the order of
         // iteration.
         // If there was a method to tell if a node was a parallel block this might be
         // less of an issue.
-        List<String> sortedIds = new ArrayList<>(nodeMap.keySet());
-        Collections.sort(sortedIds, new FlowNodeWrapper.NodeIdComparator().reversed());
-        dump("Sorted Ids: %s", String.join(", ", sortedIds));
-        for (String id : sortedIds) {
-            getRelationshipForNode(nodeMap.get(id));
+        // The index is sorted by ID, so walk it backwards.
+        for (int pos = size - 1; pos >= 0; pos--) {
+            FlowNode node = nodeIndex.get(pos);
+            getRelationshipForNode(node);
             // Add this node to the parents's stack as the last of it's child nodes that
             //  we have seen.
-            addSeenNodes(nodeMap.get(id));
+            addSeenNodes(node);
         }
         return relationships;
     }
@@ -90,16 +103,21 @@ public class NodeRelationshipFinder {
         if (FlowNodeWrapper.isStart(node)) {
             addBlockRelationship(node);
         } else {
-            dump("Why are we here?? %s - %s", node.getId(), node.getClass());
+            log.dump("Why are we here?? %s - %s", node.getId(), node.getClass());
         }
     }
 
     private void addSeenNodes(FlowNode node) {
-        if (!seenChildNodes.keySet().contains(node.getEnclosingId())) {
-            seenChildNodes.put(node.getEnclosingId(), new ArrayDeque<FlowNode>());
+        int enclosingPos = index.enclosingPositionOf(index.positionOf(node));
+        // Nodes without an enclosing block are never looked up as anyone's children.
+        if (enclosingPos < 0) {
+            return;
+        }
+        if (seenChildNodes[enclosingPos] == null) {
+            seenChildNodes[enclosingPos] = new ArrayDeque<FlowNode>();
         }
-        dump("Adding %s to seenChildNodes %s", node.getId(), node.getEnclosingId());
-        seenChildNodes.get(node.getEnclosingId()).push(node);
+        log.dump("Adding %s to seenChildNodes %s", node.getId(), index.get(enclosingPos).getId());
+        seenChildNodes[enclosingPos].push(node);
     }
 
     @CheckForNull
@@ -107,52 +125,49 @@ public class NodeRelationshipFinder {
         FlowNode after = null;
         // The after node is the last child of the enclosing node, except for the last node in
         // a block, then it's the last node in the enclosing nodes list (likely, this blocks end node).
-        FlowNode parentStartNode = getFirstEnclosingNode(node);
-        ArrayDeque<FlowNode> laterSiblings = getProcessedChildren(parentStartNode);
-        if (parentStartNode != null && laterSiblings.isEmpty()) {
+        // Enclosing blocks come from the index, rather than reading them from the node each time.
+        int parentStartPos = index.enclosingPositionOf(index.positionOf(node));
+        ArrayDeque<FlowNode> laterSiblings = getProcessedChildren(parentStartPos);
+        if (parentStartPos >= 0 && laterSiblings.isEmpty()) {
             // If there are no later siblings, get the parents later sibling.
-            ArrayDeque<FlowNode> parentsLaterSiblings = getProcessedChildren(getFirstEnclosingNode(parentStartNode));
+            ArrayDeque<FlowNode> parentsLaterSiblings = getProcessedChildren(index.enclosingPositionOf(parentStartPos));
             after = parentsLaterSiblings.isEmpty() ? null : parentsLaterSiblings.peek();
-            dump(parentsLaterSiblings.toString());
+            log.dump("%s", parentsLaterSiblings);
         } else {
-            dump(laterSiblings.toString());
+            log.dump("%s", laterSiblings);
             after = laterSiblings.peek();
         }
         return after;
     }
 
-    @CheckForNull
-    private BlockStartNode getFirstEnclosingNode(FlowNode node) {
-        return node.getEnclosingBlocks().isEmpty()
-                ? null
-                : node.getEnclosingBlocks().get(0);
-    }
-
-    private ArrayDeque<FlowNode> getProcessedChildren(@CheckForNull FlowNode node) {
-        if (node != null && seenChildNodes.keySet().contains(node.getId())) {
-            return seenChildNodes.get(node.getId());
+    private ArrayDeque<FlowNode> getProcessedChildren(int pos) {
+        if (pos >= 0 && seenChildNodes[pos] != null) {
+            return seenChildNodes[pos];
         }
         return new ArrayDeque<FlowNode>();
     }
 
     private void addStepRelationship(@NonNull StepAtomNode step) {
-        dump("Generating relationship for step %s", step.getId());
+        log.dump("Generating relationship for step %s", step.getId());
         // FlowNode after = subsequentNode;
         FlowNode after = getAfterNode(step);
-        dump(
+        log.dump(
                 "Adding step for %s(%s),%s(%s)",
                 step.getId(),
                 step.getClass().getName(),
                 after == null ? "null" : after.getId(),
                 after == null ? "null" : after.getClass().getName());
         NodeRelationship nodeRelationship = new NodeRelationship(step, step, after);
-        relationships.put(step.getId(), nodeRelationship);
+        setRelationship(step, nodeRelationship);
     }
 
     private void handleBlockEnd(@NonNull BlockEndNode<?> endNode) {
         // Blindly push a new start pending reliable way to check for parallel node.
         FlowNode startNode = endNode.getStartNode();
-        endNodes.put(startNode.getId(), endNode);
+        int startPos = index.positionOf(startNode);
+        if (startPos >= 0) {
+            endNodes[startPos] = endNode;
+        }
         // Create new stack for this block, add the end node and push it to stack of stacks.
         ArrayDeque<FlowNode> nodeBlockStack = new ArrayDeque<>();
         lastSeenNodes.push(nodeBlockStack);
@@ -162,21 +177,24 @@ public class NodeRelationshipFinder {
         NodeRelationship blockRelationship = null;
         // Can be null if the block is running, in this case we give the end node as the
         // current nodes.
-        FlowNode endNode = endNodes.getOrDefault(node.getId(), node);
-        if (PipelineNodeUtil.isParallelBranch(node)) {
+        FlowNode endNode = endNodes[index.positionOf(node)];
+        if (endNode == null) {
+            endNode = node;
+        }
+        if (FlowNodeFlags.isParallelBranch(index.flagsAt(index.positionOf(node)))) {
             addParallelBranchRelationship(node, endNode);
         } else {
-            dump("Adding relationship for %s", node.getId());
+            log.dump("Adding relationship for %s", node.getId());
             if (!pendingBranchRelationships.isEmpty()) {
                 blockRelationship = addParallelRelationship(node, endNode);
             } else {
                 blockRelationship = addStageRelationship(node, endNode);
             }
-            relationships.put(node.getId(), blockRelationship);
+            setRelationship(node, blockRelationship);
             // Set this relationship for the end node as well - as the relationship
             // encompasses it too.
             if (endNode != node) {
-                relationships.put(endNode.getId(), blockRelationship);
+                setRelationship(endNode, blockRelationship);
             }
         }
     }
@@ -186,7 +204,7 @@ public class NodeRelationshipFinder {
         // Store a parallel branch relationship - these will be used to build up the
         // parent parallel block relationship.
         // Once generated, that relationship will be superseded this one.
-        dump(
+        log.dump(
                 "Adding parallel branch relationship for %s(%s)->%s(%s)",
                 node.getId(),
                 node.getClass().getName(),
@@ -200,7 +218,7 @@ public class NodeRelationshipFinder {
 
     private NodeRelationship addParallelRelationship(@NonNull FlowNode node, @NonNull FlowNode endNode) {
         FlowNode after = getAfterNode(node);
-        dump(
+        log.dump(
                 "Generating relationship for parallel Block %s (with after %s)",
                 node.getId(), (after != null) ? after.getId() : "null");
         // handle parallel block case.
@@ -209,26 +227,35 @@ public class NodeRelationshipFinder {
         // Set branch relationship to the parent ParallelBlockRelationship - as they are
         // fairly interdependent.
         for (NodeRelationship r : pendingBranchRelationships) {
-            relationships.put(r.getStart().getId(), parallelRelationship);
+            setRelationship(r.getStart(), parallelRelationship);
             // End nodes can be null when graph is running.
             if (r.getEnd() != null) {
-                relationships.put(r.getEnd().getId(), parallelRelationship);
+                setRelationship(r.getEnd(), parallelRelationship);
             }
         }
         pendingBranchRelationships.clear();
         return parallelRelationship;
     }
 
+    private void setRelationship(@NonNull FlowNode node, @NonNull NodeRelationship relationship) {
+        int pos = index.positionOf(node);
+        if (pos >= 0) {
+            relationships[pos] = relationship;
+        }
+    }
+
     private NodeRelationship addStageRelationship(@NonNull FlowNode node, @NonNull FlowNode endNode) {
         FlowNode after = getAfterNode(node);
-        dump(
-                "Generating relationship for Block %s{%s}->%s{%s} (with after %s{%s})",
-                node.getId(),
-                node.getClass(),
-                endNode.getId(),
-                endNode.getClass(),
-                (after != null) ? after.getId() : "null",
-                (after != null) ? after.getClass() : "null");
+        if (log.isEnabled()) {
+            log.dump(
+                    "Generating relationship for Block %s{%s}->%s{%s} (with after %s{%s})",
+                    node.getId(),
+                    node.getClass(),
+                    endNode.getId(),
+                    endNode.getClass(),
+                    (after != null) ? after.getId() : "null",
+                    (after != null) ? after.getClass() : "null");
+        }
         return new NodeRelationship(node, endNode, after);
     }
 }
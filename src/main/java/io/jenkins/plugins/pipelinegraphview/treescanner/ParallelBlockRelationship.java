@@ -6,8 +6,12 @@ import io.jenkins.plugins.pipelinegraphview.utils.NodeRunStatus;
 import io.jenkins.plugins.pipelinegraphview.utils.PipelineNodeUtil;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicReference;
 import org.jenkinsci.plugins.workflow.actions.ThreadNameAction;
 import org.jenkinsci.plugins.workflow.graph.BlockStartNode;
 import org.jenkinsci.plugins.workflow.graph.FlowNode;
@@ -16,12 +20,9 @@ import org.jenkinsci.plugins.workflow.pipelinegraphanalysis.GenericStatus;
 import org.jenkinsci.plugins.workflow.pipelinegraphanalysis.StatusAndTiming;
 import org.jenkinsci.plugins.workflow.pipelinegraphanalysis.TimingInfo;
 import org.jenkinsci.plugins.workflow.support.actions.PauseAction;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 public class ParallelBlockRelationship extends NodeRelationship {
-    private static final Logger logger = LoggerFactory.getLogger(ParallelBlockRelationship.class);
-    private boolean isDebugEnabled = logger.isDebugEnabled();
+    private static final DebugLog log = new DebugLog(ParallelBlockRelationship.class);
 
     @NonNull
     protected List<BlockStartNode> branchStarts = new ArrayList<>();
@@ -34,6 +35,12 @@ public class ParallelBlockRelationship extends NodeRelationship {
     protected GenericStatus overallStatus;
     protected TimingInfo overallTiming;
 
+    // The branches of a parallel block share their relationship, and may be wrapped concurrently.
+    // Whichever thread gets here first computes the results (outside of any lock), and the others join
+    // its task - fork-join workers help with it rather than blocking on a monitor.
+    private final AtomicReference<ForkJoinTask<?>> timingTask = new AtomicReference<>();
+    private final AtomicReference<ForkJoinTask<?>> statusTask = new AtomicReference<>();
+
     public ParallelBlockRelationship(
             @NonNull FlowNode start,
             @NonNull FlowNode end,
@@ -45,14 +52,6 @@ public class ParallelBlockRelationship extends NodeRelationship {
         this.branchEnds = branchEnds;
     }
 
-    // Print debug message if 'isDebugEnabled' is true.
-    @Override
-    protected void dump(String message, Object... args) {
-        if (isDebugEnabled) {
-            logger.debug(String.format(message, args));
-        }
-    }
-
     public ParallelBlockRelationship(
             @NonNull FlowNode start,
             @NonNull FlowNode end,
@@ -85,14 +84,20 @@ public class ParallelBlockRelationship extends NodeRelationship {
         return this.branchEnds;
     }
 
+    /*
+     * Returns true if the parallel block has ended, at which point the status and timing of its
+     * branches can no longer change.
+     */
+    public boolean isBranchesClosed() {
+        return this.start != this.end;
+    }
+
     /*
      * Gets TimingInfo for relationship.
      */
     @Override
     public @NonNull TimingInfo getTimingInfo(WorkflowRun run) {
-        if (this.overallTiming == null) {
-            calculateTimings(run);
-        }
+        calculateTimings(run);
         return this.overallTiming;
     }
 
@@ -106,34 +111,47 @@ public class ParallelBlockRelationship extends NodeRelationship {
      * Gets TimingInfo for relationship.
      */
     public @NonNull TimingInfo getBranchTimingInfo(WorkflowRun run, BlockStartNode startNode) {
-        if (this.branchTimings == null) {
-            calculateTimings(run);
-        }
+        calculateTimings(run);
         return this.branchTimings.get(getBranchName(startNode));
     }
 
+    private void calculateTimings(WorkflowRun run) {
+        computeOnce(timingTask, () -> computeTimings(run));
+    }
+
     /*
      * Gets TimingInfo for relationship.
      */
-    private void calculateTimings(WorkflowRun run) {
-        long[] pauseDurations = this.branchStarts.stream()
-                .mapToLong(s -> PauseAction.getPauseDuration(s))
-                .toArray();
+    private void computeTimings(WorkflowRun run) {
         // The parallel API expects parallel end to be null if this is still running -
         // so only pass it if it;s not the start node;
         FlowNode parallelEndNode = (this.start != this.end) ? this.end : null;
-        for (int i = 0; i < this.branchStarts.size(); i++) {
-            FlowNode branchStart = this.branchStarts.get(i);
+        // Each branch is timed independently, so compute them concurrently and merge them back
+        // in branch order.
+        @SuppressWarnings("unchecked")
+        Map<String, TimingInfo>[] timings = new Map[this.branchStarts.size()];
+        StatusAndTimingExecutor.forEach(timings.length, i -> {
+            BlockStartNode branchStart = this.branchStarts.get(i);
             FlowNode branchEnd = this.branchEnds.get(i);
-            dump(
+            log.dump(
                     "Calculating parallel branch timings %s, %s",
                     branchStart.getId(), (branchEnd != null) ? branchEnd.getId() : "null");
+            timings[i] = StatusAndTiming.computeParallelBranchTimings(
+                    run,
+                    this.start,
+                    Collections.singletonList(branchStart),
+                    Collections.singletonList(branchEnd),
+                    parallelEndNode,
+                    new long[] {PauseAction.getPauseDuration(branchStart)});
+        });
+        Map<String, TimingInfo> mergedTimings = merge(timings);
+        log.dump("Calculating parallel timings %s, %s (with above branches)", start.getId(), end.getId());
+        TimingInfo timing =
+                StatusAndTiming.computeOverallParallelTiming(run, mergedTimings, this.start, parallelEndNode);
+        synchronized (this) {
+            this.branchTimings = mergedTimings;
+            this.overallTiming = timing;
         }
-        this.branchTimings = StatusAndTiming.computeParallelBranchTimings(
-                run, this.start, this.branchStarts, this.branchEnds, parallelEndNode, pauseDurations);
-        dump("Calculating parallel timings %s, %s (with above branches)", start.getId(), end.getId());
-        this.overallTiming =
-                StatusAndTiming.computeOverallParallelTiming(run, this.branchTimings, this.start, parallelEndNode);
     }
 
     /*
@@ -141,10 +159,8 @@ public class ParallelBlockRelationship extends NodeRelationship {
      */
     @Override
     public @NonNull NodeRunStatus getStatus(WorkflowRun run) {
-        if (this.overallStatus == null) {
-            calculateStatuses(run);
-        }
-        dump("Overall status for '%s': '%s'", this.start, this.overallStatus);
+        calculateStatuses(run);
+        log.dump("Overall status for '%s': '%s'", this.start, this.overallStatus);
         return new NodeRunStatus(this.overallStatus);
     }
 
@@ -152,10 +168,8 @@ public class ParallelBlockRelationship extends NodeRelationship {
      * Gets Status for relationship.
      */
     public @NonNull NodeRunStatus getBranchStatus(WorkflowRun run, BlockStartNode branchStartNode) {
-        if (this.branchStatuses == null) {
-            calculateStatuses(run);
-        }
-        dump(
+        calculateStatuses(run);
+        log.dump(
                 "Branch status for %s (%s): '%s'",
                 branchStartNode.getId(),
                 getBranchName(branchStartNode),
@@ -164,26 +178,72 @@ public class ParallelBlockRelationship extends NodeRelationship {
         return new NodeRunStatus(this.branchStatuses.get(getBranchName(branchStartNode)), skippedStage);
     }
 
+    private void calculateStatuses(WorkflowRun run) {
+        computeOnce(statusTask, () -> computeStatuses(run));
+    }
+
     /*
-     * Gets TimingInfo for relationship.
+     * Gets Status for relationship.
      */
-    private void calculateStatuses(WorkflowRun run) {
+    private void computeStatuses(WorkflowRun run) {
         // The parallel API expects parallel end to be null if this is still running -
         // so only pass it if its not the start node;
         FlowNode parallelEndNode = (this.start != this.end) ? this.end : null;
-        this.branchStatuses = StatusAndTiming.computeBranchStatuses2(
-                run, this.start, this.branchStarts, this.branchEnds, parallelEndNode);
-        for (int i = 0; i < this.branchStarts.size(); i++) {
-            BlockStartNode branchStart = this.branchStarts.get(i);
-            FlowNode branchEnd = this.branchEnds.get(i);
-            dump(
-                    "Calculating parallel branch status %s, %s: %s",
-                    branchStart.getId(),
-                    (branchEnd != null) ? branchEnd.getId() : "null",
-                    getBranchStatus(run, branchStart));
+        @SuppressWarnings("unchecked")
+        Map<String, GenericStatus>[] statuses = new Map[this.branchStarts.size()];
+        StatusAndTimingExecutor.forEach(
+                statuses.length,
+                i -> statuses[i] = StatusAndTiming.computeBranchStatuses2(
+                        run,
+                        this.start,
+                        Collections.singletonList(this.branchStarts.get(i)),
+                        Collections.singletonList(this.branchEnds.get(i)),
+                        parallelEndNode));
+        Map<String, GenericStatus> mergedStatuses = merge(statuses);
+        // Only look up the branch statuses if we are going to log them.
+        if (log.isEnabled()) {
+            for (int i = 0; i < this.branchStarts.size(); i++) {
+                BlockStartNode branchStart = this.branchStarts.get(i);
+                FlowNode branchEnd = this.branchEnds.get(i);
+                log.dump(
+                        "Calculating parallel branch status %s, %s: %s",
+                        branchStart.getId(),
+                        (branchEnd != null) ? branchEnd.getId() : "null",
+                        mergedStatuses.get(getBranchName(branchStart)));
+            }
         }
 
-        dump("Calculating parallel status %s, %s (with above branches)", this.start.getId(), this.end.getId());
-        this.overallStatus = StatusAndTiming.condenseStatus(this.branchStatuses.values());
+        log.dump("Calculating parallel status %s, %s (with above branches)", this.start.getId(), this.end.getId());
+        GenericStatus status = StatusAndTiming.condenseStatus(mergedStatuses.values());
+        synchronized (this) {
+            this.branchStatuses = mergedStatuses;
+            this.overallStatus = status;
+        }
+    }
+
+    /*
+     * Runs 'computation' if no other thread has, otherwise waits for (or helps with) the one that did.
+     * Exceptions thrown by the computation are rethrown to every caller.
+     */
+    private static void computeOnce(AtomicReference<ForkJoinTask<?>> holder, Runnable computation) {
+        ForkJoinTask<?> task = holder.get();
+        if (task == null) {
+            ForkJoinTask<?> newTask = ForkJoinTask.adapt(computation);
+            if (holder.compareAndSet(null, newTask)) {
+                newTask.invoke();
+                return;
+            }
+            task = holder.get();
+        }
+        task.join();
+    }
+
+    // Merges per-branch results in branch order.
+    private static <T> Map<String, T> merge(Map<String, T>[] branchResults) {
+        Map<String, T> merged = new LinkedHashMap<>();
+        for (Map<String, T> branchResult : branchResults) {
+            merged.putAll(branchResult);
+        }
+        return merged;
     }
 }
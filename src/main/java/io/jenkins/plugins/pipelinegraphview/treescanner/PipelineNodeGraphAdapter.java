@@ -10,10 +10,11 @@ import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
 import org.jenkinsci.plugins.workflow.job.WorkflowRun;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 /**
+ * Instances may be shared between requests for the same run, so the public methods are
+ * synchronized - the remapping they do lazily is not thread-safe.
+ *
  * @author Tim Brown Adapter class that runs a 'PipelineNodeTreeVisitor' and
  *         adapts the outputs to
  *         look more like that of the original PipelineGraphNodeVisitor. The
@@ -23,8 +24,7 @@ import org.slf4j.LoggerFactory;
  */
 public class PipelineNodeGraphAdapter implements PipelineGraphBuilderApi, PipelineStepBuilderApi {
 
-    private static final Logger logger = LoggerFactory.getLogger(PipelineNodeGraphAdapter.class);
-    private boolean isDebugEnabled = logger.isDebugEnabled();
+    private static final DebugLog log = new DebugLog(PipelineNodeGraphAdapter.class);
     private PipelineNodeTreeScanner treeScanner;
     private List<FlowNodeWrapper> pipelineNodesList;
     private Map<String, List<FlowNodeWrapper>> stepsMap;
@@ -53,14 +53,16 @@ public class PipelineNodeGraphAdapter implements PipelineGraphBuilderApi, Pipeli
                 // id.
                 if (node.getType() == FlowNodeWrapper.NodeType.PARALLEL_BLOCK
                         && parent.getType() == FlowNodeWrapper.NodeType.STAGE) {
-                    dump(
-                            "getNodesToRemap => Found Parallel block {id: %s, name: %s, type: %s} that has a Stage {id: %s, name: %s, type: %s} as a parent. Adding to remap list.",
-                            node.getId(),
-                            node.getDisplayName(),
-                            node.getType(),
-                            parent.getId(),
-                            parent.getDisplayName(),
-                            parent.getType());
+                    if (log.isEnabled()) {
+                        log.dump(
+                                "getNodesToRemap => Found Parallel block {id: %s, name: %s, type: %s} that has a Stage {id: %s, name: %s, type: %s} as a parent. Adding to remap list.",
+                                node.getId(),
+                                node.getDisplayName(),
+                                node.getType(),
+                                parent.getId(),
+                                parent.getDisplayName(),
+                                parent.getType());
+                    }
                     this.nodesToRemap.put(node.getId(), parent.getId());
                     // Skip other checks.
                     continue;
@@ -71,14 +73,16 @@ public class PipelineNodeGraphAdapter implements PipelineGraphBuilderApi, Pipeli
                 // in parallel branches.
                 if (parent.getType() == FlowNodeWrapper.NodeType.PARALLEL
                         && node.getDisplayName().equals(parent.getDisplayName())) {
-                    dump(
-                            "getNodesToRemap => Found Stage {id: %s, name: %s, type: %s} that is an only child and has a parent with the same name {id: %s, name: %s, type: %s}. Adding to remap list.",
-                            node.getId(),
-                            node.getDisplayName(),
-                            node.getType(),
-                            parent.getId(),
-                            parent.getDisplayName(),
-                            parent.getType());
+                    if (log.isEnabled()) {
+                        log.dump(
+                                "getNodesToRemap => Found Stage {id: %s, name: %s, type: %s} that is an only child and has a parent with the same name {id: %s, name: %s, type: %s}. Adding to remap list.",
+                                node.getId(),
+                                node.getDisplayName(),
+                                node.getType(),
+                                parent.getId(),
+                                parent.getDisplayName(),
+                                parent.getType());
+                    }
                     this.nodesToRemap.put(node.getId(), parent.getId());
                     continue;
                 }
@@ -101,25 +105,21 @@ public class PipelineNodeGraphAdapter implements PipelineGraphBuilderApi, Pipeli
         return nodeId;
     }
 
-    // Print debug message if 'isDebugEnabled' is true.
-    private void dump(String message, Object... args) {
-        if (isDebugEnabled) {
-            logger.debug(String.format(message, args));
-        }
-    }
-
     // Useful for dumping node maps to console. These can then be viewed in dor or
     // online via:
     // https://dreampuf.github.io/GraphvizOnline
     private void dumpNodeGraphviz(
             List<FlowNodeWrapper> localPipelineNodesList, Map<String, List<FlowNodeWrapper>> localStepsMap) {
+        if (!log.isEnabled()) {
+            return;
+        }
         List<FlowNodeWrapper> nodes = new ArrayList<>(localPipelineNodesList);
         if (stepsMap != null) {
             for (List<FlowNodeWrapper> stepsList : localStepsMap.values()) {
                 nodes.addAll(stepsList);
             }
         }
-        dump(FlowNodeWrapper.getNodeGraphviz(nodes));
+        log.dump(FlowNodeWrapper.getNodeGraphviz(nodes));
     }
 
     private void dumpNodeGraphviz(List<FlowNodeWrapper> nodes) {
@@ -138,11 +138,13 @@ public class PipelineNodeGraphAdapter implements PipelineGraphBuilderApi, Pipeli
         Collections.sort(this.pipelineNodesList, new FlowNodeWrapper.NodeComparator());
         // Remove children whose parents were skipped.
         Map<String, String> nodesToRemap = getNodesToRemap(this.pipelineNodesList);
-        dump(
-                "remapStageParentage => nodesToRemap: %s",
-                nodesToRemap.entrySet().stream()
-                        .map(entrySet -> entrySet.getKey() + ":" + entrySet.getValue())
-                        .collect(Collectors.joining(",", "[", "]")));
+        if (log.isEnabled()) {
+            log.dump(
+                    "remapStageParentage => nodesToRemap: %s",
+                    nodesToRemap.entrySet().stream()
+                            .map(entrySet -> entrySet.getKey() + ":" + entrySet.getValue())
+                            .collect(Collectors.joining(",", "[", "]")));
+        }
         dumpNodeGraphviz(this.pipelineNodesList);
         // Find all nodes that have a parent to remap (see 'getNodesToRemap') and change
         // their parentage
@@ -161,26 +163,30 @@ public class PipelineNodeGraphAdapter implements PipelineGraphBuilderApi, Pipeli
                         FlowNodeWrapper newParent = pipelineNodeMap.get(newParentId);
                         node.addEdge(newParent);
                         node.addParent(newParent);
-                        dump(
-                                "remapStageParentage => Remapped parent node of {id: %s, name: %s, type: %s} from {id: %s, name: %s, type: %s} to {id: %s, name: %s, type: %s}.",
-                                node.getId(),
-                                node.getDisplayName(),
-                                node.getType(),
-                                parent.getId(),
-                                parent.getDisplayName(),
-                                parent.getType(),
-                                newParent.getId(),
-                                newParent.getDisplayName(),
-                                newParent.getType());
+                        if (log.isEnabled()) {
+                            log.dump(
+                                    "remapStageParentage => Remapped parent node of {id: %s, name: %s, type: %s} from {id: %s, name: %s, type: %s} to {id: %s, name: %s, type: %s}.",
+                                    node.getId(),
+                                    node.getDisplayName(),
+                                    node.getType(),
+                                    parent.getId(),
+                                    parent.getDisplayName(),
+                                    parent.getType(),
+                                    newParent.getId(),
+                                    newParent.getDisplayName(),
+                                    newParent.getType());
+                        }
                     } else {
-                        dump(
-                                "remapStageParentage => Removed parent of {id: %s, name: %s, type: %s} - was {id: %s, name: %s, type: %s}.",
-                                node.getId(),
-                                node.getDisplayName(),
-                                node.getType(),
-                                parent.getId(),
-                                parent.getDisplayName(),
-                                parent.getType());
+                        if (log.isEnabled()) {
+                            log.dump(
+                                    "remapStageParentage => Removed parent of {id: %s, name: %s, type: %s} - was {id: %s, name: %s, type: %s}.",
+                                    node.getId(),
+                                    node.getDisplayName(),
+                                    node.getType(),
+                                    parent.getId(),
+                                    parent.getDisplayName(),
+                                    parent.getType());
+                        }
                     }
                 }
             }
@@ -212,7 +218,7 @@ public class PipelineNodeGraphAdapter implements PipelineGraphBuilderApi, Pipeli
             String originalParentId = remapEntry.getKey();
             if (this.stepsMap.containsKey(originalParentId)) {
                 String remappedParentId = remapEntry.getValue();
-                dump(
+                log.dump(
                         "remapStepParentage => Remapping %s steps from stage %s to %s.",
                         this.stepsMap.get(originalParentId).size(), originalParentId, remappedParentId);
                 List<FlowNodeWrapper> remappedParentStepsList =
@@ -227,25 +233,25 @@ public class PipelineNodeGraphAdapter implements PipelineGraphBuilderApi, Pipeli
         dumpNodeGraphviz(getPipelineNodes(), this.stepsMap);
     }
 
-    public List<FlowNodeWrapper> getPipelineNodes() {
+    public synchronized List<FlowNodeWrapper> getPipelineNodes() {
         if (this.pipelineNodesList == null) {
             remapStageParentage();
         }
         return this.pipelineNodesList;
     }
 
-    public Map<String, List<FlowNodeWrapper>> getAllSteps() {
+    public synchronized Map<String, List<FlowNodeWrapper>> getAllSteps() {
         if (this.stepsMap == null) {
             remapStepParentage();
         }
         return this.stepsMap;
     }
 
-    public List<FlowNodeWrapper> getStageSteps(String startNodeId) {
+    public synchronized List<FlowNodeWrapper> getStageSteps(String startNodeId) {
         return getAllSteps().getOrDefault(startNodeId, new ArrayList<FlowNodeWrapper>());
     }
 
-    public Map<String, List<FlowNodeWrapper>> getStep() {
+    public synchronized Map<String, List<FlowNodeWrapper>> getStep() {
         if (this.stepsMap == null) {
             remapStepParentage();
         }
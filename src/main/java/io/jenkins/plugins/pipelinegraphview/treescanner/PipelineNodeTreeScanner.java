@@ -2,6 +2,7 @@ package io.jenkins.plugins.pipelinegraphview.treescanner;
 
 import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.NonNull;
+import io.jenkins.plugins.pipelinegraphview.utils.FlowNodeFlags;
 import io.jenkins.plugins.pipelinegraphview.utils.FlowNodeWrapper;
 import io.jenkins.plugins.pipelinegraphview.utils.NodeRunStatus;
 import io.jenkins.plugins.pipelinegraphview.utils.PipelineNodeUtil;
@@ -10,8 +11,6 @@ import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.stream.Collectors;
 import org.jenkinsci.plugins.pipeline.modeldefinition.actions.ExecutionModelAction;
 import org.jenkinsci.plugins.workflow.actions.ErrorAction;
 import org.jenkinsci.plugins.workflow.flow.FlowExecution;
@@ -38,6 +37,10 @@ public class PipelineNodeTreeScanner {
      */
     private List<FlowNode> heads;
 
+    // The model of this run if it is running, used to look up nodes and the status of closed blocks.
+    @CheckForNull
+    private IncrementalGraphModel model;
+
     // Maps a node ID to a given node wrapper. Stores Stages and parallel blocks -
     // not steps.
     private Map<String, FlowNodeWrapper> stageNodeMap = new LinkedHashMap<>();
@@ -45,10 +48,12 @@ public class PipelineNodeTreeScanner {
     // Maps a node ID to a given step node wrapper.
     private Map<String, FlowNodeWrapper> stepNodeMap = new LinkedHashMap<>();
 
+    // Maps a stage ID to its (sorted) child steps. Built once, when the graph is built.
+    private Map<String, List<FlowNodeWrapper>> stageStepsMap = new LinkedHashMap<>();
+
     private final boolean declarative;
 
-    private static final Logger logger = LoggerFactory.getLogger(PipelineNodeTreeScanner.class);
-    private final boolean isDebugEnabled = logger.isDebugEnabled();
+    private static final DebugLog log = new DebugLog(PipelineNodeTreeScanner.class);
 
     public PipelineNodeTreeScanner(@NonNull WorkflowRun run) {
         this.run = run;
@@ -57,76 +62,103 @@ public class PipelineNodeTreeScanner {
         this.build();
     }
 
-    // Print debug message if 'isDebugEnabled' is true.
-    private void dump(String message, Object... args) {
-        if (isDebugEnabled) {
-            logger.debug(String.format(message, args));
-        }
-    }
-
     /**
      * Builds the flow node graph.
      */
     public void build() {
-        dump("Building graph");
+        log.dump("Building graph");
         if (execution != null) {
-            LinkedHashMap<String, FlowNode> nodes = getAllNodes();
+            NodeIndex index = NodeIndex.of(getAllNodes());
             NodeRelationshipFinder finder = new NodeRelationshipFinder();
-            LinkedHashMap<String, NodeRelationship> relationships = finder.getNodeRelationships(nodes);
-            GraphBuilder builder = new GraphBuilder(nodes, relationships, this.run, this.execution);
-            dump("Original nodes:");
-            dump(FlowNodeWrapper.getNodeGraphviz(builder.getNodes()));
+            NodeRelationship[] relationships = finder.getNodeRelationships(index);
+            GraphBuilder builder = new GraphBuilder(index, relationships, this.run, this.execution, this.model);
+            if (log.isEnabled()) {
+                log.dump("Original nodes:");
+                log.dump(FlowNodeWrapper.getNodeGraphviz(builder.getNodes()));
+            }
             this.stageNodeMap = builder.getStageMapping();
             this.stepNodeMap = builder.getStepMapping();
-            List<FlowNodeWrapper> remappedNodes = new ArrayList<>(this.stageNodeMap.values());
-            remappedNodes.addAll(this.stepNodeMap.values());
-            dump("Remapped nodes:");
-            dump(FlowNodeWrapper.getNodeGraphviz(remappedNodes));
+            this.stageStepsMap = buildStageStepsMap();
+            if (log.isEnabled()) {
+                List<FlowNodeWrapper> remappedNodes = new ArrayList<>(this.stageNodeMap.values());
+                remappedNodes.addAll(this.stepNodeMap.values());
+                log.dump("Remapped nodes:");
+                log.dump(FlowNodeWrapper.getNodeGraphviz(remappedNodes));
+            }
         } else {
             this.stageNodeMap = new LinkedHashMap<>();
             this.stepNodeMap = new LinkedHashMap<>();
+            this.stageStepsMap = new LinkedHashMap<>();
+        }
+        log.dump("Graph built");
+    }
+
+    /*
+     * Groups steps by their parent stages in a single pass over the steps, rather than
+     * scanning every step for each stage.
+     */
+    private Map<String, List<FlowNodeWrapper>> buildStageStepsMap() {
+        Map<String, List<FlowNodeWrapper>> stageSteps = new LinkedHashMap<>();
+        for (String stageId : stageNodeMap.keySet()) {
+            stageSteps.put(stageId, new ArrayList<>());
+        }
+        for (FlowNodeWrapper wrappedStep : stepNodeMap.values()) {
+            for (FlowNodeWrapper parent : wrappedStep.getParents()) {
+                List<FlowNodeWrapper> steps = stageSteps.get(parent.getId());
+                if (steps != null) {
+                    steps.add(wrappedStep);
+                }
+            }
+        }
+        FlowNodeWrapper.NodeComparator comparator = new FlowNodeWrapper.NodeComparator();
+        for (List<FlowNodeWrapper> steps : stageSteps.values()) {
+            steps.sort(comparator);
         }
-        dump("Graph built");
+        return stageSteps;
     }
 
     /**
      * Gets all the nodes that are reachable in the graph.
      */
-    private LinkedHashMap<String, FlowNode> getAllNodes() {
+    private List<FlowNode> getAllNodes() {
         heads = execution.getCurrentHeads();
+        // Running builds keep a model of their nodes that is updated as new nodes are added, so we
+        // don't need to walk the FlowNode storage each time. The passes below still go over every node.
+        model = IncrementalGraphModel.forExecution(execution);
+        if (model != null) {
+            List<FlowNode> nodes = model.getNodeList();
+            log.dump("Got %s nodes from incremental graph model", nodes.size());
+            return nodes;
+        }
+        // Load the nodes from storage in parallel, so the walk below doesn't have to load them one by one.
+        FlowNodePrefetcher.prefetch(execution, heads);
         final DepthFirstScanner scanner = new DepthFirstScanner();
         scanner.setup(heads);
 
-        // nodes that we've visited
-        final LinkedHashMap<String, FlowNode> nodeMap = new LinkedHashMap<>();
+        // nodes that we've visited - the scanner only visits each node once.
+        final List<FlowNode> nodes = new ArrayList<>();
 
         for (FlowNode n : scanner) {
-            nodeMap.put(n.getId(), n);
+            nodes.add(n);
         }
-        return nodeMap;
+        return nodes;
     }
 
     @NonNull
     public List<FlowNodeWrapper> getStageSteps(String startNodeId) {
-        List<FlowNodeWrapper> stageSteps = new ArrayList<>();
-        FlowNodeWrapper wrappedStage = stageNodeMap.get(startNodeId);
-        for (FlowNodeWrapper wrappedStep : stepNodeMap.values()) {
-            if (wrappedStep.getParents().contains(wrappedStage)) {
-                stageSteps.add(wrappedStep);
-            }
-        }
-        Collections.sort(stageSteps, new FlowNodeWrapper.NodeComparator());
-        dump("Returning %s steps for node '%s'", stageSteps.size(), startNodeId);
+        // Return a copy, callers are free to modify the list.
+        List<FlowNodeWrapper> stageSteps =
+                new ArrayList<>(stageStepsMap.getOrDefault(startNodeId, Collections.emptyList()));
+        log.dump("Returning %s steps for node '%s'", stageSteps.size(), startNodeId);
         return stageSteps;
     }
 
     @NonNull
     public Map<String, List<FlowNodeWrapper>> getAllSteps() {
         Map<String, List<FlowNodeWrapper>> stageNodeStepMap = new LinkedHashMap<>();
-        for (String stageId : stageNodeMap.keySet()) {
-            stageNodeStepMap.put(stageId, getStageSteps(stageId));
+        for (Map.Entry<String, List<FlowNodeWrapper>> entry : stageStepsMap.entrySet()) {
+            stageNodeStepMap.put(entry.getKey(), new ArrayList<>(entry.getValue()));
         }
-
         return stageNodeStepMap;
     }
 
@@ -148,52 +180,82 @@ public class PipelineNodeTreeScanner {
     }
 
     private class GraphBuilder {
-        private final Map<String, FlowNode> nodeMap;
-        private final Map<String, NodeRelationship> relationships;
+        // All nodes in the graph. State below is kept in arrays indexed by the position of a node in
+        // the index, rather than in maps keyed by node ID.
+        private final NodeIndex index;
+        private final NodeRelationship[] relationships;
         private final WorkflowRun run;
 
         @NonNull
         private final FlowExecution execution;
 
-        private Map<String, FlowNodeWrapper> wrappedNodeMap = new LinkedHashMap<>();
+        // Remembers the status and timing of closed blocks between builds of a running graph.
+        @CheckForNull
+        private final IncrementalGraphModel model;
+
+        private final FlowNodeWrapper[] wrappedNodes;
+        // The wrapped nodes in the order they were added.
+        private final List<FlowNodeWrapper> wrappedNodeList = new ArrayList<>();
         // These two are populated when required using by filtering unwanted nodes from
-        // 'wrappedNodeMap' into a new map.
-        private Map<String, FlowNodeWrapper> wrappedStepMap;
-        private Map<String, FlowNodeWrapper> wrappedStageMap;
+        // 'wrappedNodes' into a new array.
+        private FlowNodeWrapper[] wrappedSteps;
+        private FlowNodeWrapper[] wrappedStages;
+        // The status and timing of each node that will be wrapped, indexed by position. These don't
+        // depend on each other, so are computed concurrently before any nodes are wrapped.
+        private final NodeRunStatus[] statuses;
+        private final TimingInfo[] timings;
 
         // The root stage in the graph. We assign any unhandled exceptions to this.
         // FlowNodeWrapper rootStage = null;
 
         private final Logger logger = LoggerFactory.getLogger(GraphBuilder.class);
-        private boolean isDebugEnabled = logger.isDebugEnabled();
+        private final DebugLog log = new DebugLog(GraphBuilder.class);
 
         /*
          * Builds a graph representing this Execution. Stages an steps aer represented
          * in the same graph.
          */
         public GraphBuilder(
-                @NonNull Map<String, FlowNode> nodeMap,
-                @NonNull Map<String, NodeRelationship> relationships,
+                @NonNull NodeIndex index,
+                @NonNull NodeRelationship[] relationships,
                 @NonNull WorkflowRun run,
-                @NonNull FlowExecution execution) {
-            this.nodeMap = nodeMap;
+                @NonNull FlowExecution execution,
+                @CheckForNull IncrementalGraphModel model) {
+            this.index = index;
             this.relationships = relationships;
             this.run = run;
             this.execution = execution;
+            this.model = model;
+            this.wrappedNodes = new FlowNodeWrapper[index.size()];
+            this.statuses = new NodeRunStatus[index.size()];
+            this.timings = new TimingInfo[index.size()];
             buildGraph();
         }
 
-        // Print debug message if 'isDebugEnabled' is true.
-        private void dump(String message, Object... args) {
-            if (isDebugEnabled) {
-                logger.debug(String.format(message, args));
-            }
+        protected List<FlowNodeWrapper> getNodes() {
+            return new ArrayList<>(wrappedNodeList);
         }
 
-        protected List<FlowNodeWrapper> getNodes() {
-            return wrappedNodeMap.entrySet().stream()
-                    .map(entrySet -> entrySet.getValue())
-                    .collect(Collectors.toList());
+        // Returns the position of the wrapped node in the index.
+        private int positionOf(@NonNull FlowNodeWrapper wrappedNode) {
+            return index.positionOf(wrappedNode.getIntId());
+        }
+
+        // Returns true if the given node is in the given array of wrapped nodes.
+        private boolean contains(@NonNull FlowNodeWrapper[] nodes, @NonNull FlowNodeWrapper wrappedNode) {
+            int pos = positionOf(wrappedNode);
+            return pos >= 0 && nodes[pos] != null;
+        }
+
+        // Converts an array of wrapped nodes into a map keyed by ID, in ID order.
+        private Map<String, FlowNodeWrapper> toMap(@NonNull FlowNodeWrapper[] nodes) {
+            Map<String, FlowNodeWrapper> nodeMap = new LinkedHashMap<>();
+            for (FlowNodeWrapper wrappedNode : nodes) {
+                if (wrappedNode != null) {
+                    nodeMap.put(wrappedNode.getId(), wrappedNode);
+                }
+            }
+            return nodeMap;
         }
 
         /*
@@ -204,55 +266,79 @@ public class PipelineNodeTreeScanner {
          * will be remapped to the closest not-step parent.
          */
         public @NonNull Map<String, FlowNodeWrapper> getStageMapping() {
-            if (this.wrappedStageMap != null) {
-                return this.wrappedStageMap;
+            return toMap(getStages());
+        }
+
+        private @NonNull FlowNodeWrapper[] getStages() {
+            if (this.wrappedStages != null) {
+                return this.wrappedStages;
             }
-            dump("Remapping stages");
+            log.dump("Remapping stages");
             // Find any root stages (ones without parents) that have steps - we want to return these.
             // This should only be FlowNodeStart nodes, but I want to be flexible - if a Stage has steps then the
             // step view should display it.
             // NOTE: In instances where this isn't the FlowNodeStart, this might add an unexpected FlowNode to the graph
             // view.
-            List<FlowNodeWrapper> rootStagesWithSteps = getStagesWithChildSteps().stream()
-                    .filter(s -> s.getFirstParent() == null)
-                    .collect(Collectors.toList());
-            Map<String, FlowNodeWrapper> stageMap = this.wrappedNodeMap.entrySet().stream()
-                    .filter(e -> rootStagesWithSteps.contains(e.getValue()) || shouldBeInStageMap(e.getValue()))
-                    .collect(Collectors.toMap(e -> e.getKey(), e -> e.getValue()));
-            List<FlowNodeWrapper> nodeList = new ArrayList<FlowNodeWrapper>(stageMap.values());
-            Collections.sort(nodeList, new FlowNodeWrapper.NodeComparator());
-            for (FlowNodeWrapper stage : nodeList) {
+            boolean[] isRootStageWithSteps = new boolean[wrappedNodes.length];
+            for (FlowNodeWrapper stage : getStagesWithChildSteps()) {
+                if (stage.getFirstParent() == null) {
+                    isRootStageWithSteps[positionOf(stage)] = true;
+                }
+            }
+            FlowNodeWrapper[] stages = new FlowNodeWrapper[wrappedNodes.length];
+            for (int pos = 0; pos < wrappedNodes.length; pos++) {
+                FlowNodeWrapper wrappedNode = wrappedNodes[pos];
+                if (wrappedNode != null && (isRootStageWithSteps[pos] || shouldBeInStageMap(wrappedNode))) {
+                    stages[pos] = wrappedNode;
+                }
+            }
+            // The array is in ID order, so we visit stages in the same order as sorting them would.
+            for (int pos = 0; pos < stages.length; pos++) {
+                FlowNodeWrapper stage = stages[pos];
+                if (stage == null) {
+                    continue;
+                }
                 FlowNodeWrapper firstParent = stage.getFirstParent();
                 // Remap parentage of stages that aren't children of stages (e.g. allocate node
                 // step).
-                dump("First parent of stage %s: %s", stage.getId(), firstParent);
-                if (firstParent != null) {
-                    dump("Parent exists in stage map: %s", stageMap.containsKey(firstParent.getId()));
+                log.dump("First parent of stage %s: %s", stage.getId(), firstParent);
+                if (firstParent != null && log.isEnabled()) {
+                    log.dump("Parent exists in stage map: %s", contains(stages, firstParent));
                 }
-                if (firstParent != null && !stageMap.containsKey(firstParent.getId())) {
-                    stageMap.put(stage.getId(), remapNode(stage, stageMap));
+                if (firstParent != null && !contains(stages, firstParent)) {
+                    stages[pos] = remapNode(stage, stages);
                 }
             }
-            this.wrappedStageMap = stageMap;
-            return this.wrappedStageMap;
+            this.wrappedStages = stages;
+            return this.wrappedStages;
         }
 
         /* Filter wrappedNodes to get list of steps.
          */
-        private Map<String, FlowNodeWrapper> getSteps() {
-            return this.wrappedNodeMap.entrySet().stream()
-                    .filter(e -> shouldBeInStepMap(e.getValue()))
-                    .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+        private FlowNodeWrapper[] getSteps() {
+            FlowNodeWrapper[] steps = new FlowNodeWrapper[wrappedNodes.length];
+            for (int pos = 0; pos < wrappedNodes.length; pos++) {
+                if (wrappedNodes[pos] != null && shouldBeInStepMap(wrappedNodes[pos])) {
+                    steps[pos] = wrappedNodes[pos];
+                }
+            }
+            return steps;
         }
 
         /* Filter wrappedNodes to get list of steps.
          */
         private List<FlowNodeWrapper> getStagesWithChildSteps() {
-            return getSteps().entrySet().stream()
-                    .map(e -> e.getValue().getFirstParent())
-                    .filter(p -> p != null)
-                    .map(p -> wrappedNodeMap.get(p.getId()))
-                    .collect(Collectors.toList());
+            List<FlowNodeWrapper> stages = new ArrayList<>();
+            for (FlowNodeWrapper step : getSteps()) {
+                FlowNodeWrapper parent = step != null ? step.getFirstParent() : null;
+                if (parent != null) {
+                    int pos = positionOf(parent);
+                    if (pos >= 0 && wrappedNodes[pos] != null) {
+                        stages.add(wrappedNodes[pos]);
+                    }
+                }
+            }
+            return stages;
         }
 
         private boolean shouldBeInStageMap(FlowNodeWrapper n) {
@@ -279,8 +365,8 @@ public class PipelineNodeTreeScanner {
          * findParentNode.
          */
         private @NonNull FlowNodeWrapper remapNode(
-                @NonNull FlowNodeWrapper wrappedNode, @NonNull Map<String, FlowNodeWrapper> stageMap) {
-            dump("Remapping node %s, %s", wrappedNode.getId(), wrappedNode.getClass());
+                @NonNull FlowNodeWrapper wrappedNode, @NonNull FlowNodeWrapper[] stages) {
+            log.dump("Remapping node %s, %s", wrappedNode.getId(), wrappedNode.getClass());
             // Create new wrapper as we don't want to change the old one.
             FlowNodeWrapper remappedNode = new FlowNodeWrapper(
                     wrappedNode.getNode(),
@@ -288,9 +374,10 @@ public class PipelineNodeTreeScanner {
                     wrappedNode.getTiming(),
                     wrappedNode.getInputStep(),
                     wrappedNode.getRun(),
-                    wrappedNode.getType());
-            FlowNodeWrapper closestParent = findParentNode(wrappedNode, stageMap);
-            dump(
+                    wrappedNode.getType(),
+                    wrappedNode.getFlags());
+            FlowNodeWrapper closestParent = findParentNode(wrappedNode, stages);
+            log.dump(
                     "Found closest parent for node %s, %s",
                     wrappedNode.getId(), (closestParent != null) ? closestParent.getId() : "null");
             if (closestParent != null) {
@@ -306,26 +393,29 @@ public class PipelineNodeTreeScanner {
          * This provides a similar representation to PipelineStepVisitor.
          */
         public @NonNull Map<String, FlowNodeWrapper> getStepMapping() {
-            if (wrappedStepMap != null) {
-                return wrappedStepMap;
+            if (wrappedSteps != null) {
+                return toMap(wrappedSteps);
             }
 
-            dump("Remapping steps");
-            Map<String, FlowNodeWrapper> stepMap = getSteps();
-            Map<String, FlowNodeWrapper> stageMap = this.getStageMapping();
-            List<FlowNodeWrapper> nodeList = new ArrayList<FlowNodeWrapper>(stepMap.values());
-            nodeList.sort(new FlowNodeWrapper.NodeComparator());
-            for (FlowNodeWrapper step : nodeList) {
+            log.dump("Remapping steps");
+            FlowNodeWrapper[] steps = getSteps();
+            FlowNodeWrapper[] stages = getStages();
+            // The array is in ID order, so we visit steps in the same order as sorting them would.
+            for (int pos = 0; pos < steps.length; pos++) {
+                FlowNodeWrapper step = steps[pos];
+                if (step == null) {
+                    continue;
+                }
                 FlowNodeWrapper firstParent = step.getFirstParent();
                 // Remap parentage of steps that aren't children of stages (e.g. are in Step
                 // Block).
-                if (firstParent != null && !stageMap.containsKey(firstParent.getId())) {
-                    stepMap.put(step.getId(), remapNode(step, stageMap));
+                if (firstParent != null && !contains(stages, firstParent)) {
+                    steps[pos] = remapNode(step, stages);
                 }
             }
 
-            this.wrappedStepMap = stepMap;
-            return this.wrappedStepMap;
+            this.wrappedSteps = steps;
+            return toMap(this.wrappedSteps);
         }
 
         private boolean shouldBeInStepMap(FlowNodeWrapper n) {
@@ -344,35 +434,45 @@ public class PipelineNodeTreeScanner {
          * Builds a graph from the list of nodes and relationships given to the class.
          */
         private void buildGraph() {
-            List<FlowNode> nodeList = new ArrayList<>(nodeMap.values());
-            nodeList.sort(new FlowNodeWrapper.FlowNodeComparator());
+            // The index is already sorted by ID.
+            int size = index.size();
             // If the Pipeline ended with an unhandled exception, then we want to catch the
             // node which threw it.
             BlockEndNode<?> nodeThatThrewException = null;
-            if (!nodeList.isEmpty()) {
-                boolean hasStage = nodeList.stream().anyMatch(PipelineNodeUtil::isStage);
+            if (size > 0) {
+                boolean hasStage = false;
+                for (int pos = 0; pos < size && !hasStage; pos++) {
+                    hasStage = FlowNodeFlags.isStage(index.flagsAt(pos));
+                }
 
-                nodeThatThrewException = getUnhandledException(nodeList.get(nodeList.size() - 1), hasStage);
+                nodeThatThrewException = getUnhandledException(index.get(size - 1), hasStage);
             }
-            for (FlowNode node : nodeList) {
+            computeStatusesAndTimings(nodeThatThrewException);
+            for (int pos = 0; pos < size; pos++) {
+                FlowNode node = index.get(pos);
                 if (nodeThatThrewException == node) {
-                    handleException(node, this.relationships.get(node.getId()));
+                    handleException(pos, node, this.relationships[pos]);
                     continue;
                 } else if (node instanceof BlockEndNode) {
                     // Drop End nodes from Pipeline - unless they are responsible for the unhandled
                     // exception.
-                    dump("Skipping end node %s, %s", node.getId(), node.getClass());
+                    log.dump("Skipping end node %s, %s", node.getId(), node.getClass());
                     continue;
                 }
-                dump("Wrapping %s [%s]", node.getId(), node.getClass());
-                FlowNodeWrapper wrappedNode = wrapNode(node, relationships.get(node.getId()));
+                log.dump("Wrapping %s [%s]", node.getId(), node.getClass());
+                FlowNodeWrapper wrappedNode = wrapNode(pos, node);
                 // Assign parent.
-                FlowNodeWrapper parent = findParentNode(wrappedNode, wrappedNodeMap);
+                FlowNodeWrapper parent = findParentNode(wrappedNode, wrappedNodes);
                 assignParent(wrappedNode, parent);
-                wrappedNodeMap.put(node.getId(), wrappedNode);
+                addWrappedNode(pos, wrappedNode);
             }
         }
 
+        private void addWrappedNode(int pos, @NonNull FlowNodeWrapper wrappedNode) {
+            wrappedNodes[pos] = wrappedNode;
+            wrappedNodeList.add(wrappedNode);
+        }
+
         /*
          * Returns the origin of any unhandled exception for this node, or null if none
          * found.
@@ -386,12 +486,12 @@ public class PipelineNodeTreeScanner {
                 if (hasStage && PipelineNodeUtil.isJenkinsFailureException(errorAction.getError())) {
                     return null;
                 }
-                dump(
+                log.dump(
                         "getUnhandledException => Found unhandled exception: %s",
                         errorAction.getError().getMessage());
                 FlowNode nodeThatThrewException = ErrorAction.findOrigin(errorAction.getError(), this.execution);
                 if (nodeThatThrewException instanceof BlockEndNode<?>) {
-                    dump(
+                    log.dump(
                             "getUnhandledException => Returning nodeThatThrewException: %s",
                             nodeThatThrewException.getId());
                     return (BlockEndNode<?>) nodeThatThrewException;
@@ -404,8 +504,8 @@ public class PipelineNodeTreeScanner {
                  * to the graph, we use the end node that we were given to act as the step
                  * - this might need additional logic when getting the log for the exception.
                  */
-                if (node instanceof BlockEndNode<?> && nodeMap.values().size() <= 2) {
-                    dump("getUnhandledException => Returning node: %s", node.getId());
+                if (node instanceof BlockEndNode<?> && index.size() <= 2) {
+                    log.dump("getUnhandledException => Returning node: %s", node.getId());
                     return (BlockEndNode<?>) node;
                 }
                 logger.error(String.format(
@@ -421,16 +521,16 @@ public class PipelineNodeTreeScanner {
          * (the underlying FlowNode class isn't guaranteed).
          */
         private void handleException(
-                @NonNull FlowNode nodeWhichThrewException, @NonNull NodeRelationship relationship) {
+                int pos, @NonNull FlowNode nodeWhichThrewException, @NonNull NodeRelationship relationship) {
             assert relationship != null;
-            dump(
+            log.dump(
                     "Wrapping nodeWhichThrewException %s [%s]",
                     nodeWhichThrewException.getId(), nodeWhichThrewException.getClass());
-            FlowNodeWrapper wrappedNode = wrapNode(nodeWhichThrewException, relationship);
+            FlowNodeWrapper wrappedNode = wrapNode(pos, nodeWhichThrewException);
             FlowNode startNode = null;
             startNode = ((BlockEndNode<?>) nodeWhichThrewException).getStartNode();
             assignParent(wrappedNode, startNode);
-            wrappedNodeMap.put(wrappedNode.getId(), wrappedNode);
+            addWrappedNode(pos, wrappedNode);
         }
 
         /*
@@ -438,13 +538,13 @@ public class PipelineNodeTreeScanner {
          */
         private void assignParent(@NonNull FlowNodeWrapper wrappedNode, @CheckForNull FlowNode parent) {
             if (parent != null) {
-                if (!wrappedNodeMap.containsKey(parent.getId())) {
+                int pos = index.positionOf(parent);
+                if (pos < 0 || wrappedNodes[pos] == null) {
                     logger.error(String.format(
-                            "Couldn't find start of node %s (parent of %s) in wrappedNodeMap.",
+                            "Couldn't find start of node %s (parent of %s) in wrappedNodes.",
                             parent.getId(), wrappedNode.getId()));
                 } else {
-                    FlowNodeWrapper wrappedParent = wrappedNodeMap.get(parent.getId());
-                    assignParent(wrappedNode, wrappedParent);
+                    assignParent(wrappedNode, wrappedNodes[pos]);
                 }
             }
         }
@@ -454,44 +554,74 @@ public class PipelineNodeTreeScanner {
          */
         private void assignParent(@NonNull FlowNodeWrapper wrappedNode, @CheckForNull FlowNodeWrapper wrappedParent) {
             if (wrappedParent != null) {
-                dump("Adding parent %s to %s", wrappedParent.getId(), wrappedNode.getId());
+                log.dump("Adding parent %s to %s", wrappedParent.getId(), wrappedNode.getId());
                 wrappedNode.addParent(wrappedParent);
             }
         }
 
         /*
          * Finds the first node the list of enclosing nodes not exists in the provided
-         * map of nodes.
+         * array of nodes (indexed by position).
          */
         private @CheckForNull FlowNodeWrapper findParentNode(
-                @NonNull FlowNodeWrapper child, @NonNull Map<String, FlowNodeWrapper> wrappedNodeMap) {
-            List<String> enclosingIds = child.getNode().getAllEnclosingIds();
-            Set<String> knownNodes = wrappedNodeMap.keySet();
-            for (String possibleParentId : enclosingIds) {
-                dump("Checking if %s in %s", possibleParentId, String.join(", ", knownNodes));
-                if (knownNodes.contains(possibleParentId)) {
-                    return wrappedNodeMap.get(possibleParentId);
+                @NonNull FlowNodeWrapper child, @NonNull FlowNodeWrapper[] knownNodes) {
+            // Walk up the enclosing blocks using the index, rather than reading them from storage.
+            int pos = index.enclosingPositionOf(positionOf(child));
+            while (pos >= 0) {
+                if (knownNodes[pos] != null) {
+                    return knownNodes[pos];
                 }
+                pos = index.enclosingPositionOf(pos);
             }
             // Should only happen for the first node in the graph we are remapping.
             return null;
         }
 
         /*
-         * Wraps a FlowNode in a FlowNodeWrapper.
+         * Computes the status and timing of every node that will be wrapped - i.e. all nodes except
+         * end nodes, apart from the one that threw any unhandled exception.
+         * Each result is stored at the position of its node, so the graph is the same whichever
+         * order they are computed in.
          */
-        private @NonNull FlowNodeWrapper wrapNode(@NonNull FlowNode node, @NonNull NodeRelationship relationship) {
-            TimingInfo timing = null;
-            NodeRunStatus status = null;
-            if (relationship instanceof ParallelBlockRelationship && PipelineNodeUtil.isParallelBranch(node)) {
+        private void computeStatusesAndTimings(@CheckForNull BlockEndNode<?> nodeThatThrewException) {
+            StatusAndTimingExecutor.forEach(index.size(), pos -> {
+                FlowNode node = index.get(pos);
+                if (node == nodeThatThrewException || !(node instanceof BlockEndNode)) {
+                    computeStatusAndTiming(pos, node, relationships[pos]);
+                }
+            });
+        }
+
+        private void computeStatusAndTiming(int pos, @NonNull FlowNode node, @NonNull NodeRelationship relationship) {
+            // Closed blocks can't change, so reuse what we computed for them in a previous build.
+            IncrementalGraphModel.ClosedNode closedNode = model != null ? model.getClosedNode(node.getId()) : null;
+            if (closedNode != null) {
+                timings[pos] = closedNode.timing;
+                statuses[pos] = closedNode.status;
+                return;
+            }
+            boolean closed;
+            if (relationship instanceof ParallelBlockRelationship
+                    && FlowNodeFlags.isParallelBranch(index.flagsAt(pos))) {
                 ParallelBlockRelationship parallelRelationship = (ParallelBlockRelationship) relationship;
-                timing = parallelRelationship.getBranchTimingInfo(this.run, (BlockStartNode) node);
-                status = parallelRelationship.getBranchStatus(this.run, (BlockStartNode) node);
+                timings[pos] = parallelRelationship.getBranchTimingInfo(this.run, (BlockStartNode) node);
+                statuses[pos] = parallelRelationship.getBranchStatus(this.run, (BlockStartNode) node);
+                closed = parallelRelationship.isBranchesClosed();
             } else {
-                timing = relationship.getTimingInfo(this.run);
-                status = relationship.getStatus(this.run);
+                timings[pos] = relationship.getTimingInfo(this.run);
+                statuses[pos] = relationship.getStatus(this.run);
+                closed = relationship.isClosed();
             }
-            return new FlowNodeWrapper(node, status, timing, this.run);
+            if (closed && model != null) {
+                model.putClosedNode(node.getId(), statuses[pos], timings[pos]);
+            }
+        }
+
+        /*
+         * Wraps a FlowNode in a FlowNodeWrapper, using its precomputed status and timing.
+         */
+        private @NonNull FlowNodeWrapper wrapNode(int pos, @NonNull FlowNode node) {
+            return new FlowNodeWrapper(node, statuses[pos], timings[pos], null, this.run, null, index.flagsAt(pos));
         }
     }
 }
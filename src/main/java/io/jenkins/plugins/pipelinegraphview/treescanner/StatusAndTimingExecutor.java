@@ -0,0 +1,95 @@
+package io.jenkins.plugins.pipelinegraphview.treescanner;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+import jenkins.util.SystemProperties;
+
+/**
+ * Runs independent status and timing computations on a shared fork-join pool.
+ * Computing the status and timing of a relationship reads back through the nodes it covers, and
+ * for wide parallel graphs there are hundreds of these that don't depend on each other. Callers
+ * give each computation an index and write its result into an array at that index, so the results
+ * are the same (and in the same order) as if they had been computed one after another.
+ * Computations can start more computations (e.g. a parallel block computing its branches) - these
+ * are forked into the same pool rather than blocking a worker waiting for another pool.
+ */
+final class StatusAndTimingExecutor {
+    private static final int PARALLELISM = SystemProperties.getInteger(
+            StatusAndTimingExecutor.class.getName() + ".parallelism",
+            Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+    // Fewer computations than this are run on the calling thread, as are the leaves of larger runs.
+    private static final int THRESHOLD =
+            SystemProperties.getInteger(StatusAndTimingExecutor.class.getName() + ".threshold", 8);
+
+    private static ForkJoinPool pool;
+
+    private StatusAndTimingExecutor() {}
+
+    private static synchronized ForkJoinPool getPool() {
+        if (pool == null) {
+            pool = new ForkJoinPool(
+                    PARALLELISM,
+                    p -> {
+                        ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+                        thread.setName("PipelineGraphView status and timing " + thread.getPoolIndex());
+                        return thread;
+                    },
+                    null,
+                    false);
+        }
+        return pool;
+    }
+
+    /*
+     * Calls 'computation' for each index from 0 (inclusive) to 'size' (exclusive), returning once
+     * all have completed. Any exception thrown by a computation is rethrown.
+     */
+    static void forEach(int size, @NonNull IntConsumer computation) {
+        if (PARALLELISM <= 1 || size < THRESHOLD) {
+            for (int i = 0; i < size; i++) {
+                computation.accept(i);
+            }
+            return;
+        }
+        RangeAction action = new RangeAction(computation, 0, size);
+        ForkJoinPool forkJoinPool = getPool();
+        if (ForkJoinTask.getPool() == forkJoinPool) {
+            // Already running in the pool, so fork into it.
+            action.invoke();
+        } else {
+            forkJoinPool.invoke(action);
+        }
+    }
+
+    /*
+     * Splits a range of indexes in half until it is small enough to compute directly.
+     */
+    private static class RangeAction extends RecursiveAction {
+        private final IntConsumer computation;
+        private final int from;
+        private final int to;
+
+        RangeAction(IntConsumer computation, int from, int to) {
+            this.computation = computation;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= THRESHOLD) {
+                for (int i = from; i < to; i++) {
+                    computation.accept(i);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new RangeAction(computation, from, middle), new RangeAction(computation, middle, to));
+        }
+    }
+}
@@ -59,6 +59,11 @@ public class AbstractPipelineNode {
         return getUserFriendlyStartTime(timingInfo.getStartTimeMillis());
     }
 
+    // The raw start time, used when storing the node - see PipelineGraphViewStore.
+    protected long getStartTimeEpochMillis() {
+        return timingInfo.getStartTimeMillis();
+    }
+
     public String getTotalDurationMillis() {
         return totalDurationMillis;
     }
@@ -1,11 +1,10 @@
 package io.jenkins.plugins.pipelinegraphview.utils;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import hudson.model.Action;
 import hudson.model.BallColor;
 import hudson.security.Permission;
 import hudson.util.HttpResponses;
+import java.io.File;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeoutException;
 import java.util.logging.Level;
@@ -16,9 +15,9 @@ import org.jenkinsci.plugins.workflow.job.WorkflowRun;
 import org.kohsuke.stapler.HttpResponse;
 import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.WebMethod;
+import org.kohsuke.stapler.verb.GET;
 
 public abstract class AbstractPipelineViewAction implements Action, IconSpec {
-    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
     private static final Logger LOGGER = Logger.getLogger(AbstractPipelineViewAction.class.getName());
 
     protected final transient PipelineGraphApi api;
@@ -76,16 +75,32 @@ public abstract class AbstractPipelineViewAction implements Action, IconSpec {
         return run.getBuildStatusIconClassName();
     }
 
-    protected JSONObject createJson(PipelineGraph pipelineGraph) throws JsonProcessingException {
-        String graph = OBJECT_MAPPER.writeValueAsString(pipelineGraph);
-        return JSONObject.fromObject(graph);
-    }
-
+    // If passed 'since' (the revision from a previous response) this only returns the stages that
+    // have changed since then.
     @WebMethod(name = "tree")
-    public HttpResponse getTree() throws JsonProcessingException {
-        JSONObject graph = createJson(api.createTree());
+    public HttpResponse getTree(StaplerRequest req) {
+        String since = req.getParameter("since");
+        if (since == null) {
+            // Completed runs are streamed from the build directory, without loading the execution.
+            File storedTree = PipelineGraphViewStore.getOrStore(run, PipelineGraphViewStore.TREE_FILE);
+            if (storedTree != null) {
+                return JsonResponses.okJSON(req, storedTree);
+            }
+        }
+        String etag = PipelineGraphViewCache.getETag(run);
+        if (since != null) {
+            return JsonResponses.okJSON(req, etag, () -> api.createTreeDelta(since));
+        }
+        return JsonResponses.okJSON(req, etag, () -> api.createTree());
+    }
 
-        return HttpResponses.okJSON(graph);
+    // Pushes the state of the run as Server-Sent Events whenever it changes, until it completes.
+    // Each event holds the stages and steps, or just the stages if passed 'steps=false'.
+    @GET
+    @WebMethod(name = "events")
+    public HttpResponse getEvents(StaplerRequest req) {
+        boolean includeSteps = !"false".equals(req.getParameter("steps"));
+        return PipelineRunEvents.get().subscribe(run, includeSteps);
     }
 
     @WebMethod(name = "replay")
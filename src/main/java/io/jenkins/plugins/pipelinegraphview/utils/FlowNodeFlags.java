@@ -0,0 +1,124 @@
+package io.jenkins.plugins.pipelinegraphview.utils;
+
+import edu.umd.cs.findbugs.annotations.Nullable;
+import hudson.model.Action;
+import org.jenkinsci.plugins.pipeline.StageStatus;
+import org.jenkinsci.plugins.pipeline.SyntheticStage;
+import org.jenkinsci.plugins.workflow.actions.ErrorAction;
+import org.jenkinsci.plugins.workflow.actions.LabelAction;
+import org.jenkinsci.plugins.workflow.actions.StageAction;
+import org.jenkinsci.plugins.workflow.actions.TagsAction;
+import org.jenkinsci.plugins.workflow.actions.ThreadNameAction;
+import org.jenkinsci.plugins.workflow.graph.FlowNode;
+import org.jenkinsci.plugins.workflow.support.actions.PauseAction;
+
+/**
+ * Classifies a FlowNode by the actions it has, as a set of bit flags.
+ * Each check in {@link PipelineNodeUtil} reads the actions of the node again, and a node is checked
+ * many times while the graph is built. {@link #of(FlowNode)} reads them once, and the checks here
+ * give the same answers as their {@link PipelineNodeUtil} equivalents from the flags.
+ * Flags are a snapshot - actions added to the node afterwards (e.g. an error or a pause) aren't
+ * reflected, so only keep them for as long as the graph being built.
+ */
+public final class FlowNodeFlags {
+    public static final int STAGE_ACTION = 1;
+    public static final int LABEL = 1 << 1;
+    public static final int THREAD_NAME = 1 << 2;
+    public static final int SYNTHETIC = 1 << 3;
+    public static final int SYNTHETIC_PRE = 1 << 4;
+    public static final int SYNTHETIC_POST = 1 << 5;
+    public static final int SKIPPED = 1 << 6;
+    public static final int ERROR = 1 << 7;
+    public static final int PAUSED = 1 << 8;
+
+    private FlowNodeFlags() {}
+
+    /*
+     * Reads the actions of the node once, returning its flags. Returns 0 for a null node.
+     */
+    public static int of(@Nullable FlowNode node) {
+        if (node == null) {
+            return 0;
+        }
+        int flags = 0;
+        // Only the first tags action with each tag counts, as in PipelineNodeUtil.
+        boolean seenSyntheticTag = false;
+        boolean seenStatusTag = false;
+        for (Action action : node.getAllActions()) {
+            if (action instanceof StageAction) {
+                flags |= STAGE_ACTION;
+            }
+            if (action instanceof LabelAction) {
+                flags |= LABEL;
+            }
+            if (action instanceof ThreadNameAction) {
+                flags |= THREAD_NAME;
+            }
+            if (action instanceof ErrorAction) {
+                flags |= ERROR;
+            }
+            if (action instanceof PauseAction && ((PauseAction) action).isPaused()) {
+                flags |= PAUSED;
+            }
+            if (action instanceof TagsAction) {
+                TagsAction tagsAction = (TagsAction) action;
+                String synthetic = tagsAction.getTagValue(SyntheticStage.TAG_NAME);
+                if (synthetic != null && !seenSyntheticTag) {
+                    seenSyntheticTag = true;
+                    flags |= SYNTHETIC;
+                    if (synthetic.equals(SyntheticStage.getPre())) {
+                        flags |= SYNTHETIC_PRE;
+                    } else if (synthetic.equals(SyntheticStage.getPost())) {
+                        flags |= SYNTHETIC_POST;
+                    }
+                }
+                String status = tagsAction.getTagValue(StageStatus.TAG_NAME);
+                if (status != null && !seenStatusTag) {
+                    seenStatusTag = true;
+                    if (status.equals(StageStatus.getSkippedForConditional())
+                            || status.equals(StageStatus.getSkippedForFailure())
+                            || status.equals(StageStatus.getSkippedForUnstable())) {
+                        flags |= SKIPPED;
+                    }
+                }
+            }
+        }
+        return flags;
+    }
+
+    private static boolean has(int flags, int flag) {
+        return (flags & flag) != 0;
+    }
+
+    public static boolean isStage(int flags) {
+        return has(flags, STAGE_ACTION) || (has(flags, LABEL) && !has(flags, THREAD_NAME));
+    }
+
+    public static boolean isParallelBranch(int flags) {
+        return has(flags, LABEL) && has(flags, THREAD_NAME);
+    }
+
+    public static boolean isSyntheticStage(int flags) {
+        return has(flags, SYNTHETIC);
+    }
+
+    public static boolean isPreSyntheticStage(int flags) {
+        return has(flags, SYNTHETIC_PRE);
+    }
+
+    public static boolean isPostSyntheticStage(int flags) {
+        return has(flags, SYNTHETIC_POST);
+    }
+
+    public static boolean isSkippedStage(int flags) {
+        return has(flags, SKIPPED);
+    }
+
+    public static boolean isUnhandledException(int flags) {
+        return has(flags, ERROR);
+    }
+
+    public static boolean isPaused(int flags) {
+        return has(flags, PAUSED);
+    }
+}
@@ -85,10 +85,15 @@ public class FlowNodeWrapper {
     private final String displayName;
     private final InputStep inputStep;
     private final WorkflowRun run;
+    // What the node is, read from its actions once (see FlowNodeFlags).
+    private final int flags;
     private String causeOfFailure;
 
     private List<FlowNodeWrapper> parents = new ArrayList<>();
 
+    // The ID as an int, parsed on first use. -1 until then.
+    private int intId = -1;
+
     private ErrorAction blockErrorAction;
     private Collection<Action> pipelineActions;
 
@@ -116,11 +121,26 @@ public class FlowNodeWrapper {
             @Nullable InputStep inputStep,
             @NonNull WorkflowRun run,
             @Nullable NodeType type) {
+        this(node, status, timingInfo, inputStep, run, type, FlowNodeFlags.of(node));
+    }
+
+    /*
+     * Creates a wrapper using flags already read from the node by FlowNodeFlags.of.
+     */
+    public FlowNodeWrapper(
+            @NonNull FlowNode node,
+            @NonNull NodeRunStatus status,
+            @NonNull TimingInfo timingInfo,
+            @Nullable InputStep inputStep,
+            @NonNull WorkflowRun run,
+            @Nullable NodeType type,
+            int flags) {
         this.node = node;
         this.status = status;
         this.timingInfo = timingInfo;
-        this.type = type == null ? getNodeType(node) : type;
-        this.displayName = PipelineNodeUtil.getDisplayName(node);
+        this.flags = flags;
+        this.type = type == null ? getNodeType(node, flags) : type;
+        this.displayName = PipelineNodeUtil.getDisplayName(node, flags);
         this.inputStep = inputStep;
         this.run = run;
     }
@@ -148,20 +168,20 @@ public class FlowNodeWrapper {
         return null;
     }
 
-    private static NodeType getNodeType(FlowNode node) {
+    private static NodeType getNodeType(FlowNode node, int flags) {
         if (node instanceof AtomNode) {
             return NodeType.STEP;
-        } else if (PipelineNodeUtil.isStage(node)) {
+        } else if (FlowNodeFlags.isStage(flags)) {
             return NodeType.STAGE;
-        } else if (PipelineNodeUtil.isParallelBranch(node)) {
+        } else if (FlowNodeFlags.isParallelBranch(flags)) {
             return NodeType.PARALLEL;
-        } else if (PipelineNodeUtil.isParallelBlock(node)) {
+        } else if (PipelineNodeUtil.isParallelBlock(node, flags)) {
             return NodeType.PARALLEL_BLOCK;
         } else if (node instanceof StepStartNode) {
             return NodeType.STEPS_BLOCK;
         } else if (node instanceof FlowStartNode) {
             return NodeType.PIPELINE_START;
-        } else if (PipelineNodeUtil.isUnhandledException(node)) {
+        } else if (FlowNodeFlags.isUnhandledException(flags)) {
             return NodeType.UNHANDLED_EXCEPTION;
         }
 
@@ -192,6 +212,16 @@ public class FlowNodeWrapper {
         return node.getId();
     }
 
+    /*
+     * Returns the ID as an int, so callers can compare and index nodes without parsing the ID each time.
+     */
+    public int getIntId() {
+        if (intId < 0) {
+            intId = Integer.parseInt(getId());
+        }
+        return intId;
+    }
+
     public @NonNull FlowNode getNode() {
         return node;
     }
@@ -376,11 +406,18 @@ public class FlowNodeWrapper {
     }
 
     public boolean isSynthetic() {
-        return PipelineNodeUtil.isSyntheticStage(node);
+        return FlowNodeFlags.isSyntheticStage(flags);
     }
 
     public boolean isUnhandledException() {
-        return PipelineNodeUtil.isUnhandledException(node);
+        return FlowNodeFlags.isUnhandledException(flags);
+    }
+
+    /*
+     * Returns the flags read from the node when this wrapper was created (see FlowNodeFlags).
+     */
+    public int getFlags() {
+        return flags;
     }
 
     public static class NodeComparator implements Comparator<FlowNodeWrapper>, Serializable {
@@ -388,7 +425,7 @@ public class FlowNodeWrapper {
 
         @Override
         public int compare(FlowNodeWrapper a, FlowNodeWrapper b) {
-            return FlowNodeWrapper.compareIds(a.getId(), b.getId());
+            return Integer.compare(a.getIntId(), b.getIntId());
         }
     }
 
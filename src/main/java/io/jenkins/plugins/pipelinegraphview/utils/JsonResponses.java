@@ -0,0 +1,105 @@
+package io.jenkins.plugins.pipelinegraphview.utils;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.function.Supplier;
+import javax.servlet.http.HttpServletResponse;
+import org.kohsuke.stapler.HttpResponse;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+/*
+ * Writes JSON responses straight to the response stream with Jackson, rather than building a
+ * String and then a net.sf.json object tree from it first.
+ */
+public class JsonResponses {
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private JsonResponses() {}
+
+    /*
+     * Streams 'data' wrapped in the same envelope as 'HttpResponses.okJSON':
+     * {"status": "ok", "data": ...}
+     */
+    public static HttpResponse okJSON(@NonNull Object data) {
+        return (req, rsp, node) -> writeJSON(req, rsp, data);
+    }
+
+    /*
+     * Streams the data written to the generator by 'dataWriter' in the same envelope as 'okJSON', for
+     * data that is produced bit by bit rather than all at once.
+     */
+    public static HttpResponse okJSONStream(@NonNull DataWriter dataWriter) {
+        return (req, rsp, node) -> writeEnvelope(req, rsp, dataWriter);
+    }
+
+    /*
+     * Like 'okJSON', but tags the response with 'etag'. If the request's If-None-Match header matches
+     * 'etag' then this returns a 304 without calling 'dataSupplier'.
+     */
+    public static HttpResponse okJSON(
+            @NonNull StaplerRequest request, @NonNull String etag, @NonNull Supplier<?> dataSupplier) {
+        if (etag.equals(request.getHeader("If-None-Match"))) {
+            return (req, rsp, node) -> {
+                setCacheHeaders(rsp, etag);
+                rsp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            };
+        }
+        Object data = dataSupplier.get();
+        return (req, rsp, node) -> {
+            setCacheHeaders(rsp, etag);
+            writeJSON(req, rsp, data);
+        };
+    }
+
+    /*
+     * Streams the JSON stored in 'file' by PipelineGraphViewStore in the same envelope as 'okJSON'.
+     * Stored files don't change, so the ETag comes from the file itself.
+     */
+    public static HttpResponse okJSON(@NonNull StaplerRequest request, @NonNull File storedFile) {
+        String etag = "\"stored-" + storedFile.lastModified() + "\"";
+        if (etag.equals(request.getHeader("If-None-Match"))) {
+            return (req, rsp, node) -> {
+                setCacheHeaders(rsp, etag);
+                rsp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            };
+        }
+        return (req, rsp, node) -> {
+            setCacheHeaders(rsp, etag);
+            writeEnvelope(req, rsp, generator -> PipelineGraphViewStore.copyTo(storedFile, generator));
+        };
+    }
+
+    private static void setCacheHeaders(StaplerResponse rsp, String etag) {
+        rsp.setHeader("ETag", etag);
+        // Browsers must check with us before reusing a response.
+        rsp.setHeader("Cache-Control", "private, no-cache");
+    }
+
+    private static void writeJSON(StaplerRequest req, StaplerResponse rsp, Object data) throws IOException {
+        writeEnvelope(req, rsp, generator -> OBJECT_MAPPER.writeValue(generator, data));
+    }
+
+    private static void writeEnvelope(StaplerRequest req, StaplerResponse rsp, DataWriter dataWriter)
+            throws IOException {
+        rsp.setStatus(HttpServletResponse.SC_OK);
+        rsp.setContentType("application/json;charset=UTF-8");
+        try (OutputStream out = rsp.getCompressedOutputStream(req);
+                JsonGenerator generator = OBJECT_MAPPER.getFactory().createGenerator(out, JsonEncoding.UTF8)) {
+            generator.writeStartObject();
+            generator.writeStringField("status", "ok");
+            generator.writeFieldName("data");
+            dataWriter.write(generator);
+            generator.writeEndObject();
+        }
+    }
+
+    public interface DataWriter {
+        void write(JsonGenerator generator) throws IOException;
+    }
+}
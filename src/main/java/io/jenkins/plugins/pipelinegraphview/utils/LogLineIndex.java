@@ -0,0 +1,342 @@
+package io.jenkins.plugins.pipelinegraphview.utils;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.console.AnnotatedLargeText;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentMap;
+import jenkins.util.SystemProperties;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+import org.kohsuke.stapler.framework.io.ByteBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Maps line numbers of a step log to byte offsets, so a window of lines can be read from anywhere in
+ * the log without reading everything before it.
+ * The offset of every {@link #STRIDE}th line is kept, so finding a line reads at most that many lines
+ * from the nearest checkpoint. The index is built incrementally - each update only reads the bytes
+ * written since the last one - and once the log is complete it is written to the build directory,
+ * so it never needs to be built again.
+ */
+public final class LogLineIndex {
+    private static final Logger logger = LoggerFactory.getLogger(LogLineIndex.class);
+
+    static final String DIRECTORY = "pipeline-graph-view-line-index";
+
+    private static final int STRIDE = SystemProperties.getInteger(LogLineIndex.class.getName() + ".stride", 128);
+
+    // Bumped whenever the stored format changes, so old files are rebuilt rather than misread.
+    private static final int VERSION = 1;
+
+    private final int stride;
+
+    // checkpoints[k] is the byte offset of line k * stride.
+    private long[] checkpoints = new long[16];
+    private int checkpointCount = 1;
+    private long lineBreaks;
+    private long indexedBytes;
+    private boolean endsWithLineBreak;
+    private boolean stored;
+
+    LogLineIndex(int stride) {
+        this.stride = stride;
+    }
+
+    /*
+     * Returns the line index of the given step log, bringing it up to date with the log first.
+     */
+    @NonNull
+    public static LogLineIndex forStep(
+            @NonNull WorkflowRun run, @NonNull String nodeId, @NonNull AnnotatedLargeText<?> log) throws IOException {
+        ConcurrentMap<String, LogLineIndex> indexes = PipelineGraphViewCache.get().getLogLineIndexes(run);
+        LogLineIndex index = indexes.computeIfAbsent(nodeId, id -> load(getFile(run, id)));
+        index.update(log);
+        if (log.isComplete()) {
+            index.store(getFile(run, nodeId));
+        }
+        return index;
+    }
+
+    private static File getFile(WorkflowRun run, String nodeId) {
+        return new File(new File(run.getRootDir(), DIRECTORY), nodeId + ".idx");
+    }
+
+    private static LogLineIndex load(File file) {
+        LogLineIndex index = new LogLineIndex(STRIDE);
+        if (file.isFile()) {
+            try {
+                index.readFrom(file);
+            } catch (IOException e) {
+                // Not fatal - the index is just built again from the log.
+                logger.warn("Failed to read log line index " + file, e);
+                index = new LogLineIndex(STRIDE);
+            }
+        }
+        return index;
+    }
+
+    /*
+     * Indexes any bytes written to the log since the last update.
+     */
+    synchronized void update(@NonNull AnnotatedLargeText<?> log) throws IOException {
+        long length = log.length();
+        if (length < indexedBytes) {
+            // The log has been replaced, so start again.
+            reset();
+        }
+        if (length == indexedBytes) {
+            return;
+        }
+        // Incomplete logs are only written up to the last complete line.
+        log.writeRawLogTo(indexedBytes, new IndexingOutputStream());
+    }
+
+    private void reset() {
+        checkpoints = new long[16];
+        checkpointCount = 1;
+        lineBreaks = 0;
+        indexedBytes = 0;
+        endsWithLineBreak = false;
+        stored = false;
+    }
+
+    private void addLineBreak(long position) {
+        lineBreaks++;
+        if (lineBreaks % stride == 0) {
+            if (checkpointCount == checkpoints.length) {
+                checkpoints = Arrays.copyOf(checkpoints, checkpointCount * 2);
+            }
+            checkpoints[checkpointCount++] = position + 1;
+        }
+    }
+
+    /*
+     * Returns the number of lines indexed so far. A trailing line break doesn't start a new line.
+     */
+    public synchronized long getLineCount() {
+        return indexedBytes == 0 || endsWithLineBreak ? lineBreaks : lineBreaks + 1;
+    }
+
+    /*
+     * Returns the number of bytes of the log indexed so far.
+     */
+    public synchronized long getIndexedBytes() {
+        return indexedBytes;
+    }
+
+    /*
+     * Reads up to 'maxLines' lines of the log, starting at line 'startLine' (counting from 0).
+     * A negative 'startLine' counts back from the last line. Lines past the end of the index are
+     * not returned, even if they have been written to the log since.
+     */
+    @NonNull
+    public Window read(@NonNull AnnotatedLargeText<?> log, long startLine, int maxLines) throws IOException {
+        long from;
+        long skip;
+        long lineCount;
+        long endLine;
+        synchronized (this) {
+            lineCount = getLineCount();
+            if (startLine < 0) {
+                startLine = Math.max(0, lineCount + startLine);
+            }
+            startLine = Math.min(startLine, lineCount);
+            endLine = Math.min(lineCount, startLine + Math.max(0, maxLines));
+            if (startLine == lineCount) {
+                return new Window(startLine, endLine, lineCount, indexedBytes, new ByteBuffer());
+            }
+            int checkpoint = (int) Math.min(startLine / stride, checkpointCount - 1);
+            from = checkpoints[checkpoint];
+            skip = startLine - (long) checkpoint * stride;
+        }
+        WindowOutputStream window = new WindowOutputStream(from, skip, endLine - startLine);
+        try {
+            log.writeRawLogTo(from, window);
+        } catch (WindowFullException e) {
+            // Read all the lines we need, so stop reading the log.
+        }
+        return new Window(startLine, endLine, lineCount, window.startByte, window.bytes);
+    }
+
+    synchronized void store(@NonNull File file) throws IOException {
+        if (stored) {
+            return;
+        }
+        File directory = file.getParentFile();
+        Files.createDirectories(directory.toPath());
+        // Write to a temporary file first, so readers never see a partially written file.
+        Path tmp = Files.createTempFile(directory.toPath(), file.getName(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(tmp))) {
+                out.writeInt(VERSION);
+                out.writeInt(stride);
+                out.writeLong(indexedBytes);
+                out.writeLong(lineBreaks);
+                out.writeBoolean(endsWithLineBreak);
+                out.writeInt(checkpointCount);
+                for (int i = 0; i < checkpointCount; i++) {
+                    out.writeLong(checkpoints[i]);
+                }
+            }
+            Files.move(tmp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        stored = true;
+    }
+
+    synchronized void readFrom(@NonNull File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(file.toPath()))) {
+            if (in.readInt() != VERSION || in.readInt() != stride) {
+                throw new IOException("Unexpected log line index format");
+            }
+            indexedBytes = in.readLong();
+            lineBreaks = in.readLong();
+            endsWithLineBreak = in.readBoolean();
+            checkpointCount = in.readInt();
+            checkpoints = new long[Math.max(16, checkpointCount)];
+            for (int i = 0; i < checkpointCount; i++) {
+                checkpoints[i] = in.readLong();
+            }
+        }
+        stored = true;
+    }
+
+    /*
+     * A range of whole lines read from a log, as the raw (still annotated) bytes of the log.
+     */
+    public static final class Window {
+        private final long startLine;
+        private final long endLine;
+        private final long lineCount;
+        private final long startByte;
+        private final ByteBuffer bytes;
+
+        Window(long startLine, long endLine, long lineCount, long startByte, ByteBuffer bytes) {
+            this.startLine = startLine;
+            this.endLine = endLine;
+            this.lineCount = lineCount;
+            this.startByte = startByte;
+            this.bytes = bytes;
+        }
+
+        public long getStartLine() {
+            return startLine;
+        }
+
+        // Exclusive.
+        public long getEndLine() {
+            return endLine;
+        }
+
+        // The number of lines in the whole log, when it was read.
+        public long getLineCount() {
+            return lineCount;
+        }
+
+        public long getStartByte() {
+            return startByte;
+        }
+
+        // Exclusive.
+        public long getEndByte() {
+            return startByte + bytes.length();
+        }
+
+        @NonNull
+        public ByteBuffer getBytes() {
+            return bytes;
+        }
+    }
+
+    /*
+     * Records the position of each line break written to it, starting from the end of the index.
+     */
+    private class IndexingOutputStream extends OutputStream {
+        @Override
+        public void write(int b) {
+            if (b == '\n') {
+                addLineBreak(indexedBytes);
+            }
+            endsWithLineBreak = b == '\n';
+            indexedBytes++;
+        }
+
+        @Override
+        public void write(@NonNull byte[] b, int off, int len) {
+            for (int i = off; i < off + len; i++) {
+                if (b[i] == '\n') {
+                    addLineBreak(indexedBytes + i - off);
+                }
+            }
+            if (len > 0) {
+                endsWithLineBreak = b[off + len - 1] == '\n';
+                indexedBytes += len;
+            }
+        }
+    }
+
+    /*
+     * Skips 'skip' lines, then keeps the next 'lines' lines and stops the read.
+     */
+    private static class WindowOutputStream extends OutputStream {
+        private final ByteBuffer bytes = new ByteBuffer();
+        private long position;
+        private long skip;
+        private long lines;
+        private long startByte;
+
+        WindowOutputStream(long from, long skip, long lines) {
+            this.position = from;
+            this.startByte = from;
+            this.skip = skip;
+            this.lines = lines;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(@NonNull byte[] b, int off, int len) throws IOException {
+            int end = off + len;
+            int i = off;
+            while (skip > 0 && i < end) {
+                if (b[i++] == '\n') {
+                    skip--;
+                }
+            }
+            position += i - off;
+            if (skip > 0) {
+                return;
+            }
+            if (bytes.length() == 0) {
+                startByte = position;
+            }
+            int keepFrom = i;
+            while (lines > 0 && i < end) {
+                if (b[i++] == '\n') {
+                    lines--;
+                }
+            }
+            bytes.write(b, keepFrom, i - keepFrom);
+            position += i - keepFrom;
+            if (lines == 0) {
+                throw new WindowFullException();
+            }
+        }
+    }
+
+    private static class WindowFullException extends IOException {
+        private static final long serialVersionUID = 1L;
+    }
+}
@@ -10,13 +10,15 @@ import io.jenkins.plugins.pipelinegraphview.treescanner.PipelineNodeGraphAdapter
 import io.jenkins.plugins.pipelinegraphview.utils.legacy.PipelineNodeGraphVisitor;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeoutException;
-import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import org.jenkinsci.plugins.workflow.flow.FlowExecution;
 import org.jenkinsci.plugins.workflow.graph.FlowNode;
@@ -75,15 +77,42 @@ public class PipelineGraphApi {
                 .collect(Collectors.toList());
     }
 
-    private Function<String, PipelineStage> mapper(
-            Map<String, PipelineStageInternal> stageMap, Map<String, List<String>> stageToChildrenMap) {
+    /*
+     * Assembles the tree of stages in a single pass.
+     * 'stageToChildrenMap' maps a stage ID to the IDs of its children, and 'topLevelStageIds' are the
+     * stages at the root of the tree - these are returned in the order of 'stageMap'. Each stage is
+     * only materialized once, however many times it is reached.
+     */
+    static List<PipelineStage> assembleTree(
+            Map<String, PipelineStageInternal> stageMap,
+            Map<String, List<String>> stageToChildrenMap,
+            Set<String> topLevelStageIds) {
+        Map<String, PipelineStage> materialized = new HashMap<>();
+        List<PipelineStage> stageResults = new ArrayList<>(topLevelStageIds.size());
+        for (PipelineStageInternal stage : stageMap.values()) {
+            if (topLevelStageIds.contains(stage.getId())) {
+                stageResults.add(materialize(stage.getId(), stageMap, stageToChildrenMap, materialized));
+            }
+        }
+        return stageResults;
+    }
 
-        return id -> {
-            List<String> orDefault = stageToChildrenMap.getOrDefault(id, emptyList());
-            List<PipelineStage> children =
-                    orDefault.stream().map(mapper(stageMap, stageToChildrenMap)).collect(Collectors.toList());
-            return stageMap.get(id).toPipelineStage(children);
-        };
+    private static PipelineStage materialize(
+            String id,
+            Map<String, PipelineStageInternal> stageMap,
+            Map<String, List<String>> stageToChildrenMap,
+            Map<String, PipelineStage> materialized) {
+        PipelineStage stage = materialized.get(id);
+        if (stage == null) {
+            List<String> childIds = stageToChildrenMap.getOrDefault(id, emptyList());
+            List<PipelineStage> children = new ArrayList<>(childIds.size());
+            for (String childId : childIds) {
+                children.add(materialize(childId, stageMap, stageToChildrenMap, materialized));
+            }
+            stage = stageMap.get(id).toPipelineStage(children);
+            materialized.put(id, stage);
+        }
+        return stage;
     }
 
     private PipelineGraph createTree(PipelineGraphBuilderApi builder) {
@@ -92,14 +121,6 @@ public class PipelineGraphApi {
         // these are completely new representations.
         List<PipelineStageInternal> stages = getPipelineNodes(builder);
 
-        // id => stage
-        Map<String, PipelineStageInternal> stageMap = stages.stream()
-                .collect(Collectors.toMap(
-                        PipelineStageInternal::getId, stage -> stage, (u, v) -> u, LinkedHashMap::new));
-
-        Map<String, List<String>> stageToChildrenMap = new HashMap<>();
-        List<String> childNodes = new ArrayList<>();
-
         FlowExecution execution = run.getExecution();
         if (execution == null) {
             // If we don't have an execution - e.g. if the Pipeline has a syntax error -
@@ -107,29 +128,30 @@ public class PipelineGraphApi {
             // empty graph.
             return new PipelineGraph(new ArrayList<>(), false);
         }
-        stages.forEach(stage -> {
+        return new PipelineGraph(buildStageTree(stages), execution.isComplete());
+    }
+
+    /*
+     * Nests each stage under its first parent, returning the top-level stages.
+     */
+    static List<PipelineStage> buildStageTree(List<PipelineStageInternal> stages) {
+        // id => stage
+        Map<String, PipelineStageInternal> stageMap = stages.stream()
+                .collect(Collectors.toMap(
+                        PipelineStageInternal::getId, stage -> stage, (u, v) -> u, LinkedHashMap::new));
+
+        Map<String, List<String>> stageToChildrenMap = new HashMap<>();
+        Set<String> topLevelStageIds = new HashSet<>();
+        for (PipelineStageInternal stage : stages) {
             if (stage.getParents().isEmpty()) {
-                stageToChildrenMap.put(stage.getId(), new ArrayList<>());
+                topLevelStageIds.add(stage.getId());
             } else {
-                List<String> parentChildren =
-                        stageToChildrenMap.getOrDefault(stage.getParents().get(0), new ArrayList<String>());
-                parentChildren.add(stage.getId());
-                childNodes.add(stage.getId());
-                stageToChildrenMap.put(stage.getParents().get(0), parentChildren);
+                stageToChildrenMap
+                        .computeIfAbsent(stage.getParents().get(0), id -> new ArrayList<>())
+                        .add(stage.getId());
             }
-        });
-        List<PipelineStage> stageResults = stageMap.values().stream()
-                .map(pipelineStageInternal -> {
-                    List<PipelineStage> children =
-                            stageToChildrenMap.getOrDefault(pipelineStageInternal.getId(), emptyList()).stream()
-                                    .map(mapper(stageMap, stageToChildrenMap))
-                                    .collect(Collectors.toList());
-
-                    return pipelineStageInternal.toPipelineStage(children);
-                })
-                .filter(stage -> !childNodes.contains(stage.getId()))
-                .collect(Collectors.toList());
-        return new PipelineGraph(stageResults, execution.isComplete());
+        }
+        return assembleTree(stageMap, stageToChildrenMap, topLevelStageIds);
     }
 
     /*
@@ -148,7 +170,7 @@ public class PipelineGraphApi {
      */
     private PipelineGraph createShallowTree(PipelineGraphBuilderApi builder) {
         List<PipelineStageInternal> stages = getPipelineNodes(builder);
-        List<String> topLevelStageIds = new ArrayList<>();
+        Set<String> topLevelStageIds = new HashSet<>();
 
         // id => stage
         Map<String, PipelineStageInternal> stageMap = stages.stream()
@@ -170,31 +192,15 @@ public class PipelineGraphApi {
                 if (stageNode == null) {
                     return;
                 }
-                List<String> ancestors = getAncestors(stage, stageMap);
-                String treeParentId = null;
-                // Compare the list of GraphVistor ancestors to the IDs of the enclosing node in
-                // the
-                // execution.
+                // Compare the GraphVistor ancestors to the IDs of the enclosing node in the execution.
                 // If a node encloses another node, it means it's a tree parent, so the first
-                // ancestor
-                // ID we find
-                // which matches an enclosing node then it's the stages tree parent.
-                List<String> enclosingIds = stageNode.getAllEnclosingIds();
-                for (String ancestorId : ancestors) {
-                    if (enclosingIds.contains(ancestorId)) {
-                        treeParentId = ancestorId;
-                        break;
-                    }
-                }
+                // ancestor ID we find which matches an enclosing node then it's the stages tree parent.
+                String treeParentId = findTreeParentId(stage, stageMap, new HashSet<>(stageNode.getAllEnclosingIds()));
                 if (treeParentId != null) {
-                    List<String> childrenOfParent = stageToChildrenMap.getOrDefault(treeParentId, new ArrayList<>());
-                    childrenOfParent.add(stage.getId());
-                    stageToChildrenMap.put(treeParentId, childrenOfParent);
+                    stageToChildrenMap.computeIfAbsent(treeParentId, id -> new ArrayList<>()).add(stage.getId());
                 } else {
                     // If we can't find a matching parent in the execution and GraphVistor then this
-                    // is a
-                    // top level node.
-                    stageToChildrenMap.put(stage.getId(), new ArrayList<>());
+                    // is a top level node.
                     topLevelStageIds.add(stage.getId());
                 }
             } catch (java.io.IOException ex) {
@@ -206,35 +212,46 @@ public class PipelineGraphApi {
             }
         });
 
-        List<PipelineStage> stageResults = stageMap.values().stream()
-                .map(pipelineStageInternal -> {
-                    List<PipelineStage> children =
-                            stageToChildrenMap.getOrDefault(pipelineStageInternal.getId(), emptyList()).stream()
-                                    .map(mapper(stageMap, stageToChildrenMap))
-                                    .collect(Collectors.toList());
-
-                    return pipelineStageInternal.toPipelineStage(children);
-                })
-                .filter(stage -> topLevelStageIds.contains(stage.getId()))
-                .collect(Collectors.toList());
+        List<PipelineStage> stageResults = assembleTree(stageMap, stageToChildrenMap, topLevelStageIds);
         return new PipelineGraph(stageResults, execution.isComplete());
     }
 
-    private List<String> getAncestors(PipelineStageInternal stage, Map<String, PipelineStageInternal> stageMap) {
-        List<String> ancestors = new ArrayList<>();
-        if (!stage.getParents().isEmpty()) {
-            String parentId = stage.getParents().get(0); // Assume one parent.
-            ancestors.add(parentId);
-            if (stageMap.containsKey(parentId)) {
-                PipelineStageInternal parent = stageMap.get(parentId);
-                ancestors.addAll(getAncestors(parent, stageMap));
+    /*
+     * Walks up the ancestors of the stage, returning the first that is in 'enclosingIds' - or null if
+     * there isn't one.
+     */
+    static String findTreeParentId(
+            PipelineStageInternal stage, Map<String, PipelineStageInternal> stageMap, Set<String> enclosingIds) {
+        PipelineStageInternal current = stage;
+        while (current != null && !current.getParents().isEmpty()) {
+            String parentId = current.getParents().get(0); // Assume one parent.
+            if (enclosingIds.contains(parentId)) {
+                return parentId;
             }
+            current = stageMap.get(parentId);
         }
-        return ancestors;
+        return null;
     }
 
     public PipelineGraph createTree() {
-        return createTree(new PipelineNodeGraphAdapter(run));
+        return createTree(() -> PipelineGraphViewCache.get().getAdapter(run));
+    }
+
+    /*
+     * Returns the changes to the tree since the given revision (as returned by a previous call), or
+     * the full tree if that revision is unknown.
+     */
+    public PipelineGraphDelta createTreeDelta(String since) {
+        return PipelineGraphViewCache.get().getHistory(run).getDelta(since, createTree());
+    }
+
+    /*
+     * Creates the tree from the adapter given by 'adapterSupplier'. The supplier is only called if
+     * the graph isn't already cached.
+     */
+    public PipelineGraph createTree(Supplier<PipelineNodeGraphAdapter> adapterSupplier) {
+        // Completed runs can't change, so only build their graph once.
+        return PipelineGraphViewCache.get().getGraph(run, () -> createTree(adapterSupplier.get()));
     }
 
     /*
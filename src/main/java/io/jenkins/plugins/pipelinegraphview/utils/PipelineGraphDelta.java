@@ -0,0 +1,75 @@
+package io.jenkins.plugins.pipelinegraphview.utils;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * The changes to a PipelineGraph since a given revision.
+ * If the client's revision is unknown (or too old) then this contains the full graph in 'stages'
+ * and 'full' is true. Otherwise 'changed' holds the new or updated stages - flattened, with a
+ * 'parentId' instead of children - and 'removed' holds the IDs of stages that no longer exist.
+ */
+public class PipelineGraphDelta {
+
+    private final String revision;
+    private final boolean complete;
+    private final boolean full;
+    private final List<PipelineStage> stages;
+    private final List<Map<String, Object>> changed;
+    private final List<String> removed;
+
+    private PipelineGraphDelta(
+            String revision,
+            boolean complete,
+            boolean full,
+            List<PipelineStage> stages,
+            List<Map<String, Object>> changed,
+            List<String> removed) {
+        this.revision = revision;
+        this.complete = complete;
+        this.full = full;
+        this.stages = stages;
+        this.changed = changed;
+        this.removed = removed;
+    }
+
+    public static PipelineGraphDelta full(String revision, PipelineGraph graph) {
+        return new PipelineGraphDelta(
+                revision,
+                graph.isComplete(),
+                true,
+                graph.getStages(),
+                Collections.emptyList(),
+                Collections.emptyList());
+    }
+
+    public static PipelineGraphDelta changes(
+            String revision, boolean complete, List<Map<String, Object>> changed, List<String> removed) {
+        return new PipelineGraphDelta(revision, complete, false, Collections.emptyList(), changed, removed);
+    }
+
+    public String getRevision() {
+        return revision;
+    }
+
+    public boolean isComplete() {
+        return complete;
+    }
+
+    public boolean isFull() {
+        return full;
+    }
+
+    public List<PipelineStage> getStages() {
+        return stages;
+    }
+
+    public List<Map<String, Object>> getChanged() {
+        return changed;
+    }
+
+    public List<String> getRemoved() {
+        return removed;
+    }
+}
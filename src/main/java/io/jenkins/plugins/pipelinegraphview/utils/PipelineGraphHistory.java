@@ -0,0 +1,117 @@
+package io.jenkins.plugins.pipelinegraphview.utils;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import jenkins.util.SystemProperties;
+
+/*
+ * Recent snapshots of the graph of a run, so clients can be sent only the stages that changed
+ * since the snapshot they last saw.
+ * Each distinct snapshot gets a new revision. Revisions come from a counter seeded with the
+ * current time, so a revision from before a restart won't match a snapshot taken after it.
+ */
+public class PipelineGraphHistory {
+    private static final int MAX_SNAPSHOTS =
+            SystemProperties.getInteger(PipelineGraphHistory.class.getName() + ".maxSnapshots", 10);
+
+    private static final AtomicLong NEXT_REVISION = new AtomicLong(System.currentTimeMillis());
+
+    private static final String START_TIME_FIELD = "startTimeMillis";
+    private static final String RAW_START_TIME_FIELD = "startTimeEpochMillis";
+
+    // Serializes stages without their children - we record the parent ID instead. Snapshots hold the
+    // raw start time rather than the "Started X ago" text, which changes with the current time.
+    private static final ObjectMapper FLAT_MAPPER = new ObjectMapper()
+            .addMixIn(PipelineStage.class, IgnoreChildren.class)
+            .addMixIn(AbstractPipelineNode.class, RawStartTime.class);
+
+    private static final TypeReference<LinkedHashMap<String, Object>> MAP_TYPE = new TypeReference<>() {};
+
+    // Revision => (stage id => flattened stage), oldest first. Guarded by 'this'.
+    private final LinkedHashMap<String, Map<String, Map<String, Object>>> snapshots =
+            new LinkedHashMap<String, Map<String, Map<String, Object>>>() {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Map<String, Map<String, Object>>> eldest) {
+                    return size() > MAX_SNAPSHOTS;
+                }
+            };
+
+    private String latestRevision;
+
+    /*
+     * Records 'graph' as the latest snapshot (if it has changed) and returns the changes since the
+     * 'since' revision, or the full graph if that revision isn't known.
+     */
+    @NonNull
+    public synchronized PipelineGraphDelta getDelta(@CheckForNull String since, @NonNull PipelineGraph graph) {
+        Map<String, Map<String, Object>> current = flatten(graph);
+        Map<String, Map<String, Object>> latest = latestRevision != null ? snapshots.get(latestRevision) : null;
+        if (latest == null || !latest.equals(current)) {
+            latestRevision = Long.toHexString(NEXT_REVISION.getAndIncrement());
+            snapshots.put(latestRevision, current);
+        }
+        Map<String, Map<String, Object>> previous = since != null ? snapshots.get(since) : null;
+        if (previous == null) {
+            return PipelineGraphDelta.full(latestRevision, graph);
+        }
+        List<Map<String, Object>> changed = new ArrayList<>();
+        for (Map.Entry<String, Map<String, Object>> entry : current.entrySet()) {
+            if (!entry.getValue().equals(previous.get(entry.getKey()))) {
+                changed.add(withStartTimeText(entry.getValue()));
+            }
+        }
+        List<String> removed = new ArrayList<>();
+        for (String id : previous.keySet()) {
+            if (!current.containsKey(id)) {
+                removed.add(id);
+            }
+        }
+        return PipelineGraphDelta.changes(latestRevision, graph.isComplete(), changed, removed);
+    }
+
+    private static Map<String, Map<String, Object>> flatten(PipelineGraph graph) {
+        Map<String, Map<String, Object>> flattened = new LinkedHashMap<>();
+        flatten(graph.getStages(), null, flattened);
+        return flattened;
+    }
+
+    private static void flatten(
+            List<PipelineStage> stages, String parentId, Map<String, Map<String, Object>> flattened) {
+        for (PipelineStage stage : stages) {
+            LinkedHashMap<String, Object> flatStage = FLAT_MAPPER.convertValue(stage, MAP_TYPE);
+            flatStage.put("parentId", parentId);
+            flattened.put(stage.getId(), flatStage);
+            flatten(stage.getChildren(), stage.getId(), flattened);
+        }
+    }
+
+    // Converts the raw start time of a snapshotted stage back into the text sent for a full graph.
+    private static Map<String, Object> withStartTimeText(Map<String, Object> flatStage) {
+        Map<String, Object> stage = new LinkedHashMap<>(flatStage);
+        Object startTime = stage.remove(RAW_START_TIME_FIELD);
+        long startTimeMillis = startTime instanceof Number ? ((Number) startTime).longValue() : 0L;
+        stage.put(START_TIME_FIELD, AbstractPipelineNode.getUserFriendlyStartTime(startTimeMillis));
+        return stage;
+    }
+
+    @JsonIgnoreProperties({"children"})
+    private abstract static class IgnoreChildren {}
+
+    private abstract static class RawStartTime {
+        @JsonIgnore
+        abstract String getStartTimeMillis();
+
+        @JsonProperty(RAW_START_TIME_FIELD)
+        abstract long getStartTimeEpochMillis();
+    }
+}
@@ -0,0 +1,373 @@
+package io.jenkins.plugins.pipelinegraphview.utils;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.model.Item;
+import hudson.model.Run;
+import hudson.model.listeners.ItemListener;
+import hudson.model.listeners.RunListener;
+import io.jenkins.plugins.pipelinegraphview.treescanner.PipelineNodeGraphAdapter;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import jenkins.util.SystemProperties;
+import org.jenkinsci.plugins.workflow.flow.FlowExecution;
+import org.jenkinsci.plugins.workflow.graph.FlowNode;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Caches the {@link PipelineGraph} and {@link PipelineStepList} of completed runs.
+ * Once the execution of a run is complete its graph can never change again, so repeat views of
+ * a finished build are a map lookup instead of a full walk of the FlowExecution.
+ * Entries are keyed by the job full name and build number and the cache is bounded, evicting the
+ * least recently used runs first.
+ * It also holds a short-lived {@link PipelineNodeGraphAdapter} snapshot per run revision, so the
+ * graph and steps requests made for the same poll share a single scan of the run.
+ * Concurrent requests for the same revision of a running build are coalesced, so many viewers
+ * polling the same run wait on a single computation rather than each doing their own.
+ */
+@Extension
+public class PipelineGraphViewCache {
+    private static final Logger logger = LoggerFactory.getLogger(PipelineGraphViewCache.class);
+
+    private static final int MAX_SIZE =
+            SystemProperties.getInteger(PipelineGraphViewCache.class.getName() + ".maxSize", 100);
+
+    private final Cache<String, PipelineGraph> graphs =
+            CacheBuilder.newBuilder().maximumSize(MAX_SIZE).build();
+
+    private final Cache<String, PipelineStepList> allSteps =
+            CacheBuilder.newBuilder().maximumSize(MAX_SIZE).build();
+
+    // Running stages report durations relative to when they were scanned, so don't reuse a snapshot
+    // of a running build for longer than this, even if its heads haven't moved.
+    private static final long SNAPSHOT_MAX_AGE_MILLIS =
+            SystemProperties.getLong(PipelineGraphViewCache.class.getName() + ".snapshotMaxAgeMillis", 1000L);
+
+    // Likewise, an ETag for a running build is only reused for this long, so durations shown in the
+    // view still update while the heads don't change.
+    private static final long ETAG_MAX_AGE_MILLIS =
+            SystemProperties.getLong(PipelineGraphViewCache.class.getName() + ".etagMaxAgeMillis", 5000L);
+
+    private final Cache<String, AdapterSnapshot> adapters = CacheBuilder.newBuilder()
+            .maximumSize(MAX_SIZE)
+            .expireAfterAccess(5, TimeUnit.MINUTES)
+            .build();
+
+    private final Cache<String, PipelineGraphHistory> histories = CacheBuilder.newBuilder()
+            .maximumSize(MAX_SIZE)
+            .expireAfterAccess(10, TimeUnit.MINUTES)
+            .build();
+
+    // Run key => "<step ID>:<type>" => the rendered label of each finished step. Rendering step
+    // arguments is expensive and finished steps can't change, so running builds only render each once.
+    private final Cache<String, ConcurrentMap<String, PipelineStepApi.StepLabel>> stepLabels =
+            CacheBuilder.newBuilder()
+                    .maximumSize(MAX_SIZE)
+                    .expireAfterAccess(10, TimeUnit.MINUTES)
+                    .build();
+
+    // Run key => step ID => the line index of the step's log, see LogLineIndex.
+    private final Cache<String, ConcurrentMap<String, LogLineIndex>> logLineIndexes = CacheBuilder.newBuilder()
+            .maximumSize(MAX_SIZE)
+            .expireAfterAccess(10, TimeUnit.MINUTES)
+            .build();
+
+    // "<run key>?<search>" => the results of searching the logs of a completed run, see PipelineLogSearch.
+    private final Cache<String, PipelineLogSearch.Results> searchResults = CacheBuilder.newBuilder()
+            .maximumSize(MAX_SIZE)
+            .expireAfterAccess(10, TimeUnit.MINUTES)
+            .build();
+
+    // "<kind>:<run key>@<revision>" => the computation currently running for it.
+    private final ConcurrentMap<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+    public static PipelineGraphViewCache get() {
+        return ExtensionList.lookupSingleton(PipelineGraphViewCache.class);
+    }
+
+    /*
+     * Returns true if the given run can no longer change, and so is safe to cache.
+     */
+    public static boolean isComplete(@NonNull WorkflowRun run) {
+        if (run.isBuilding()) {
+            return false;
+        }
+        FlowExecution execution = run.getExecution();
+        return execution != null && execution.isComplete();
+    }
+
+    /*
+     * Returns the cached graph for the given run, computing it with 'graphSupplier' if the run is
+     * complete and not yet cached. Runs that are still going are never cached.
+     */
+    @NonNull
+    public PipelineGraph getGraph(@NonNull WorkflowRun run, @NonNull Supplier<PipelineGraph> graphSupplier) {
+        return getOrCompute("graph", graphs, run, graphSupplier);
+    }
+
+    /*
+     * Returns the cached list of all steps for the given run, computing it with 'stepsSupplier' if
+     * the run is complete and not yet cached. Runs that are still going are never cached.
+     */
+    @NonNull
+    public PipelineStepList getAllSteps(@NonNull WorkflowRun run, @NonNull Supplier<PipelineStepList> stepsSupplier) {
+        return getOrCompute("steps", allSteps, run, stepsSupplier);
+    }
+
+    /*
+     * Returns a graph adapter for the current revision of the given run, reusing the last one if the
+     * run hasn't changed since it was created. Creating an adapter scans the run, so concurrent
+     * callers for the same revision share a single new adapter.
+     */
+    @NonNull
+    public PipelineNodeGraphAdapter getAdapter(@NonNull WorkflowRun run) {
+        String key = getKey(run);
+        String revision = getRevision(run);
+        boolean complete = isComplete(run);
+        AdapterSnapshot snapshot = adapters.getIfPresent(key);
+        if (snapshot != null && snapshot.isValidFor(revision, complete)) {
+            return snapshot.adapter;
+        }
+        return singleFlight("adapter:" + key + "@" + revision, () -> {
+            PipelineNodeGraphAdapter adapter = new PipelineNodeGraphAdapter(run);
+            adapters.put(key, new AdapterSnapshot(revision, adapter));
+            return adapter;
+        });
+    }
+
+    /*
+     * Returns the recent graph snapshots of the given run, used to work out what changed between polls.
+     */
+    @NonNull
+    public PipelineGraphHistory getHistory(@NonNull WorkflowRun run) {
+        try {
+            return histories.get(getKey(run), PipelineGraphHistory::new);
+        } catch (ExecutionException e) {
+            // Can't happen, the constructor doesn't throw - but a fresh history just means sending the full graph.
+            logger.warn("Failed to get graph history for run " + run.getExternalizableId(), e);
+            return new PipelineGraphHistory();
+        }
+    }
+
+    /*
+     * Returns the rendered labels of the finished steps of the given run (see PipelineStepApi).
+     */
+    @NonNull
+    ConcurrentMap<String, PipelineStepApi.StepLabel> getStepLabels(@NonNull WorkflowRun run) {
+        try {
+            return stepLabels.get(getKey(run), ConcurrentHashMap::new);
+        } catch (ExecutionException e) {
+            // Can't happen, the constructor doesn't throw - but an empty map just means rendering again.
+            logger.warn("Failed to get step labels for run " + run.getExternalizableId(), e);
+            return new ConcurrentHashMap<>();
+        }
+    }
+
+    /*
+     * Returns the line indexes of the step logs of the given run that have been read so far.
+     */
+    @NonNull
+    ConcurrentMap<String, LogLineIndex> getLogLineIndexes(@NonNull WorkflowRun run) {
+        try {
+            return logLineIndexes.get(getKey(run), ConcurrentHashMap::new);
+        } catch (ExecutionException e) {
+            // Can't happen, the constructor doesn't throw - but an empty map just means indexing again.
+            logger.warn("Failed to get log line indexes for run " + run.getExternalizableId(), e);
+            return new ConcurrentHashMap<>();
+        }
+    }
+
+    /*
+     * Returns the cached results of the given search of the logs of a completed run, or null.
+     */
+    @CheckForNull
+    PipelineLogSearch.Results getSearchResults(@NonNull WorkflowRun run, @NonNull String search) {
+        return searchResults.getIfPresent(getKey(run) + "?" + search);
+    }
+
+    void putSearchResults(
+            @NonNull WorkflowRun run, @NonNull String search, @NonNull PipelineLogSearch.Results results) {
+        searchResults.put(getKey(run) + "?" + search, results);
+    }
+
+    /*
+     * Returns a string identifying the current state of the run's graph - the IDs of the current
+     * heads of the execution. This changes whenever a node is added to the graph.
+     */
+    @NonNull
+    public static String getRevision(@NonNull WorkflowRun run) {
+        FlowExecution execution = run.getExecution();
+        if (execution == null) {
+            return "";
+        }
+        return execution.getCurrentHeads().stream()
+                .map(FlowNode::getId)
+                .sorted()
+                .collect(Collectors.joining(","));
+    }
+
+    /*
+     * Returns an ETag for the graph and steps of the run, derived from its revision and completion
+     * state. Completed runs always have the same ETag.
+     */
+    @NonNull
+    public static String getETag(@NonNull WorkflowRun run) {
+        boolean complete = isComplete(run);
+        String revision = getRevision(run);
+        String suffix = complete ? "complete" : String.valueOf(System.currentTimeMillis() / ETAG_MAX_AGE_MILLIS);
+        return "\"" + revision + "-" + suffix + "\"";
+    }
+
+    private <T> T getOrCompute(String kind, Cache<String, T> cache, WorkflowRun run, Supplier<T> supplier) {
+        if (!isComplete(run)) {
+            // Can't be cached, but viewers polling at the same time can share the result.
+            return singleFlight(kind + ":" + getKey(run) + "@" + getRevision(run), supplier);
+        }
+        // The cache already makes concurrent loads of the same key wait for a single computation.
+        try {
+            return cache.get(getKey(run), supplier::get);
+        } catch (ExecutionException e) {
+            // Don't let a cache failure break the view - just compute the value directly.
+            logger.warn("Failed to cache graph for run " + run.getExternalizableId(), e);
+            return supplier.get();
+        }
+    }
+
+    /*
+     * Returns the number of callers waiting for a computation started by another caller.
+     */
+    int getInFlightWaiters() {
+        int waiters = 0;
+        for (CompletableFuture<Object> future : inFlight.values()) {
+            waiters += future.getNumberOfDependents();
+        }
+        return waiters;
+    }
+
+    /*
+     * Computes the value with 'supplier', unless a computation for the same key is already running,
+     * in which case this waits for it and returns its result instead.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T singleFlight(String key, Supplier<T> supplier) {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            try {
+                return (T) existing.join();
+            } catch (CompletionException e) {
+                // Rethrow the original exception, the same as if we had computed it ourselves.
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            }
+        }
+        try {
+            T value = supplier.get();
+            future.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    private static String getKey(Run<?, ?> run) {
+        return getKeyPrefix(run.getParent().getFullName()) + run.getNumber();
+    }
+
+    private static String getKeyPrefix(String jobFullName) {
+        return jobFullName + "#";
+    }
+
+    /*
+     * Removes any cached values for the given run.
+     */
+    public void invalidate(@NonNull Run<?, ?> run) {
+        String key = getKey(run);
+        graphs.invalidate(key);
+        allSteps.invalidate(key);
+        adapters.invalidate(key);
+        histories.invalidate(key);
+        stepLabels.invalidate(key);
+        logLineIndexes.invalidate(key);
+        searchResults.asMap().keySet().removeIf(search -> search.startsWith(key + "?"));
+    }
+
+    /*
+     * Removes any cached values for runs of the job with the given full name.
+     */
+    public void invalidateAll(@NonNull String jobFullName) {
+        String prefix = getKeyPrefix(jobFullName);
+        graphs.asMap().keySet().removeIf(key -> key.startsWith(prefix));
+        allSteps.asMap().keySet().removeIf(key -> key.startsWith(prefix));
+        adapters.asMap().keySet().removeIf(key -> key.startsWith(prefix));
+        histories.asMap().keySet().removeIf(key -> key.startsWith(prefix));
+        stepLabels.asMap().keySet().removeIf(key -> key.startsWith(prefix));
+        logLineIndexes.asMap().keySet().removeIf(key -> key.startsWith(prefix));
+        searchResults.asMap().keySet().removeIf(key -> key.startsWith(prefix));
+    }
+
+    private static class AdapterSnapshot {
+        private final String revision;
+        private final PipelineNodeGraphAdapter adapter;
+        private final long createdMillis = System.currentTimeMillis();
+
+        AdapterSnapshot(String revision, PipelineNodeGraphAdapter adapter) {
+            this.revision = revision;
+            this.adapter = adapter;
+        }
+
+        boolean isValidFor(String currentRevision, boolean complete) {
+            if (!revision.equals(currentRevision)) {
+                return false;
+            }
+            return complete || System.currentTimeMillis() - createdMillis < SNAPSHOT_MAX_AGE_MILLIS;
+        }
+    }
+
+    @Extension
+    public static class RunDeletedListener extends RunListener<WorkflowRun> {
+        @Override
+        public void onDeleted(WorkflowRun run) {
+            PipelineGraphViewCache.get().invalidate(run);
+        }
+    }
+
+    /*
+     * Keys use the job full name, so drop entries when a job is deleted or moved - otherwise a
+     * new job with the same name would be served the old job's graphs.
+     */
+    @Extension
+    public static class JobChangedListener extends ItemListener {
+        @Override
+        public void onDeleted(Item item) {
+            if (item instanceof WorkflowJob) {
+                PipelineGraphViewCache.get().invalidateAll(item.getFullName());
+            }
+        }
+
+        @Override
+        public void onLocationChanged(Item item, String oldFullName, String newFullName) {
+            if (item instanceof WorkflowJob) {
+                PipelineGraphViewCache.get().invalidateAll(oldFullName);
+            }
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package io.jenkins.plugins.pipelinegraphview.utils;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Suppliers;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
+import io.jenkins.plugins.pipelinegraphview.treescanner.PipelineNodeGraphAdapter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.function.Supplier;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+ * Stores the final graph and steps of a completed run as gzipped JSON files in the build
+ * directory, so they can be streamed straight back - even after a restart - without loading the
+ * FlowExecution.
+ * "Started X ago" depends on the current time, so the files hold the raw start time of each node
+ * and that is converted back into the usual 'startTimeMillis' text as the file is streamed.
+ */
+public class PipelineGraphViewStore {
+    private static final Logger logger = LoggerFactory.getLogger(PipelineGraphViewStore.class);
+
+    public static final String TREE_FILE = "pipeline-graph-view-tree.json.gz";
+    public static final String ALL_STEPS_FILE = "pipeline-graph-view-steps.json.gz";
+
+    private static final String START_TIME_FIELD = "startTimeMillis";
+    private static final String RAW_START_TIME_FIELD = "startTimeEpochMillis";
+
+    private static final ObjectMapper PERSIST_MAPPER =
+            new ObjectMapper().addMixIn(AbstractPipelineNode.class, RawStartTime.class);
+
+    private PipelineGraphViewStore() {}
+
+    /*
+     * Returns the stored file with the given name for the run, or null if the run hasn't been
+     * stored (e.g. it is still running, or completed before this was added).
+     */
+    @CheckForNull
+    public static File getFile(@NonNull WorkflowRun run, @NonNull String name) {
+        if (run.isBuilding()) {
+            return null;
+        }
+        File file = new File(run.getRootDir(), name);
+        return file.isFile() ? file : null;
+    }
+
+    /*
+     * Like 'getFile', but stores the run first if it has completed and hasn't been stored yet - e.g.
+     * builds that completed before this was added.
+     */
+    @CheckForNull
+    public static File getOrStore(@NonNull WorkflowRun run, @NonNull String name) {
+        File file = getFile(run, name);
+        if (file == null && PipelineGraphViewCache.isComplete(run)) {
+            try {
+                store(run);
+            } catch (IOException | RuntimeException e) {
+                logger.warn("Failed to store graph for run " + run.getExternalizableId(), e);
+                return null;
+            }
+            file = getFile(run, name);
+        }
+        return file;
+    }
+
+    /*
+     * Writes the graph and steps of the run into its build directory.
+     */
+    public static void store(@NonNull WorkflowRun run) throws IOException {
+        // Share a single scan of the run between the graph and steps.
+        Supplier<PipelineNodeGraphAdapter> adapter = Suppliers.memoize(() -> new PipelineNodeGraphAdapter(run));
+        write(new File(run.getRootDir(), TREE_FILE), new PipelineGraphApi(run).createTree(adapter));
+        write(new File(run.getRootDir(), ALL_STEPS_FILE), new PipelineStepApi(run).getAllSteps(adapter));
+    }
+
+    private static void write(File file, Object value) throws IOException {
+        // Write to a temporary file first, so readers never see a partially written file.
+        Path tmp = Files.createTempFile(file.getParentFile().toPath(), file.getName(), ".tmp");
+        try {
+            try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(tmp))) {
+                PERSIST_MAPPER.writeValue(out, value);
+            }
+            Files.move(tmp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /*
+     * Copies the JSON in the given stored file to 'generator', converting raw start times back
+     * into the text that would be returned for a freshly built graph.
+     */
+    public static void copyTo(@NonNull File file, @NonNull JsonGenerator generator) throws IOException {
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(file.toPath()));
+                JsonParser parser = PERSIST_MAPPER.getFactory().createParser(in)) {
+            JsonToken token;
+            while ((token = parser.nextToken()) != null) {
+                if (token == JsonToken.FIELD_NAME && RAW_START_TIME_FIELD.equals(parser.getCurrentName())) {
+                    parser.nextToken();
+                    generator.writeStringField(
+                            START_TIME_FIELD, AbstractPipelineNode.getUserFriendlyStartTime(parser.getLongValue()));
+                } else {
+                    generator.copyCurrentEvent(parser);
+                }
+            }
+        }
+    }
+
+    // Stores the raw start time instead of the "Started X ago" text.
+    private abstract static class RawStartTime {
+        @JsonIgnore
+        abstract String getStartTimeMillis();
+
+        @JsonProperty(RAW_START_TIME_FIELD)
+        abstract long getStartTimeEpochMillis();
+    }
+
+    @Extension
+    public static class CompletedListener extends RunListener<WorkflowRun> {
+        @Override
+        public void onCompleted(WorkflowRun run, @NonNull TaskListener listener) {
+            try {
+                store(run);
+            } catch (IOException | RuntimeException e) {
+                // Not fatal - the graph will be built from the FlowExecution instead.
+                logger.warn("Failed to store graph for run " + run.getExternalizableId(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,292 @@
+package io.jenkins.plugins.pipelinegraphview.utils;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.console.AnnotatedLargeText;
+import hudson.console.ConsoleNote;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import jenkins.util.SystemProperties;
+import org.jenkinsci.plugins.workflow.flow.FlowExecution;
+import org.jenkinsci.plugins.workflow.graph.FlowNode;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+
+/**
+ * Searches the logs of all the steps of a run for lines containing some text.
+ * Step logs are scanned on a small, bounded pool, a few steps ahead of the results being sent, and
+ * matches are passed on in step order as each step finishes. Once enough matches have been found the
+ * scans still running are stopped, so a search for something near the start of a huge run doesn't
+ * read the rest of it. Results for completed runs are cached, as their logs can't change.
+ */
+public final class PipelineLogSearch {
+    private static final int THREADS = SystemProperties.getInteger(
+            PipelineLogSearch.class.getName() + ".threads",
+            Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+    public static final int MAX_RESULTS = 1000;
+
+    // Lines are only returned (and searched) up to these lengths, so one huge line can't exhaust memory.
+    private static final int MAX_LINE_CHARS = 500;
+    private static final int MAX_LINE_BYTES = 1024 * 1024;
+
+    private static ThreadPoolExecutor executor;
+
+    private PipelineLogSearch() {}
+
+    private static synchronized ThreadPoolExecutor getExecutor() {
+        if (executor == null) {
+            // Threads are created on demand and die when idle.
+            executor = new ThreadPoolExecutor(
+                    THREADS,
+                    THREADS,
+                    60,
+                    TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(),
+                    new NamingThreadFactory(new DaemonThreadFactory(), "PipelineGraphView log search"));
+            executor.allowCoreThreadTimeOut(true);
+        }
+        return executor;
+    }
+
+    /*
+     * Passes the first 'limit' lines (in step order) containing 'query' to 'consumer', returning true
+     * if there were more matches than that.
+     */
+    public static boolean search(
+            @NonNull WorkflowRun run,
+            @NonNull String query,
+            boolean ignoreCase,
+            int limit,
+            @NonNull MatchConsumer consumer)
+            throws IOException {
+        String search = (ignoreCase ? "i:" : "c:") + limit + ":" + query;
+        boolean complete = PipelineGraphViewCache.isComplete(run);
+        Results cached = complete ? PipelineGraphViewCache.get().getSearchResults(run, search) : null;
+        if (cached != null) {
+            for (Match match : cached.matches) {
+                consumer.accept(match);
+            }
+            return cached.truncated;
+        }
+        List<Match> matches = new ArrayList<>();
+        String searchedFor = ignoreCase ? query.toLowerCase(Locale.ROOT) : query;
+        boolean truncated = scan(run, searchedFor, ignoreCase, limit, match -> {
+            matches.add(match);
+            consumer.accept(match);
+        });
+        if (complete) {
+            PipelineGraphViewCache.get()
+                    .putSearchResults(run, search, new Results(Collections.unmodifiableList(matches), truncated));
+        }
+        return truncated;
+    }
+
+    private static boolean scan(
+            WorkflowRun run, String query, boolean ignoreCase, int limit, MatchConsumer consumer) throws IOException {
+        FlowExecution execution = run.getExecution();
+        if (execution == null || limit <= 0) {
+            return false;
+        }
+        Iterator<PipelineStep> steps = new PipelineStepApi(run).getAllSteps().getSteps().iterator();
+        Deque<StepScan> scans = new ArrayDeque<>();
+        int found = 0;
+        try {
+            while (true) {
+                // Keep a few steps ahead of the results we are sending, but no further - each holds its matches.
+                while (scans.size() < THREADS * 2 && steps.hasNext()) {
+                    // Look for one more than the limit, to tell if there are more matches than we return.
+                    StepScan scan = new StepScan(execution, steps.next().getId(), query, ignoreCase, limit + 1);
+                    scan.future = getExecutor().submit(scan);
+                    scans.add(scan);
+                }
+                StepScan scan = scans.poll();
+                if (scan == null) {
+                    return false;
+                }
+                for (Match match : get(scan.future)) {
+                    if (found == limit) {
+                        return true;
+                    }
+                    consumer.accept(match);
+                    found++;
+                }
+            }
+        } finally {
+            for (StepScan scan : scans) {
+                scan.stop();
+            }
+        }
+    }
+
+    private static List<Match> get(Future<List<Match>> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while searching logs", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Failed to search logs", e.getCause());
+        }
+    }
+
+    public interface MatchConsumer {
+        void accept(@NonNull Match match) throws IOException;
+    }
+
+    /*
+     * A line of a step log containing the query.
+     */
+    public static final class Match {
+        private final String stepId;
+        private final long byteOffset;
+        private final String line;
+
+        Match(String stepId, long byteOffset, String line) {
+            this.stepId = stepId;
+            this.byteOffset = byteOffset;
+            this.line = line;
+        }
+
+        public String getStepId() {
+            return stepId;
+        }
+
+        // The offset of the start of the line in the step log, e.g. to pass to 'consoleOutput'.
+        public long getByteOffset() {
+            return byteOffset;
+        }
+
+        // The text of the line, without console notes.
+        public String getLine() {
+            return line;
+        }
+    }
+
+    static final class Results {
+        private final List<Match> matches;
+        private final boolean truncated;
+
+        Results(List<Match> matches, boolean truncated) {
+            this.matches = matches;
+            this.truncated = truncated;
+        }
+    }
+
+    /*
+     * Scans the log of a single step for up to 'limit' matches.
+     */
+    private static class StepScan extends OutputStream implements Callable<List<Match>> {
+        private final FlowExecution execution;
+        private final String stepId;
+        private final String query;
+        private final boolean ignoreCase;
+        private final int limit;
+        private final List<Match> matches = new ArrayList<>();
+        private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+        private long position;
+        private long lineStart;
+        private volatile boolean stopped;
+        private Future<List<Match>> future;
+
+        StepScan(FlowExecution execution, String stepId, String query, boolean ignoreCase, int limit) {
+            this.execution = execution;
+            this.stepId = stepId;
+            this.query = query;
+            this.ignoreCase = ignoreCase;
+            this.limit = limit;
+        }
+
+        void stop() {
+            stopped = true;
+            future.cancel(false);
+        }
+
+        @Override
+        public List<Match> call() throws IOException {
+            FlowNode node = execution.getNode(stepId);
+            AnnotatedLargeText<? extends FlowNode> log = PipelineNodeUtil.getLogText(node);
+            if (log == null) {
+                return matches;
+            }
+            try {
+                log.writeRawLogTo(0, this);
+                endLine();
+            } catch (StopScan e) {
+                // Found enough, or the search has finished.
+            }
+            return matches;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(@NonNull byte[] b, int off, int len) throws IOException {
+            if (stopped) {
+                throw new StopScan();
+            }
+            int start = off;
+            for (int i = off; i < off + len; i++) {
+                if (b[i] == '\n') {
+                    appendToLine(b, start, i - start);
+                    position += i + 1 - start;
+                    endLine();
+                    start = i + 1;
+                }
+            }
+            appendToLine(b, start, off + len - start);
+            position += off + len - start;
+        }
+
+        private void appendToLine(byte[] b, int off, int len) {
+            int room = MAX_LINE_BYTES - line.size();
+            if (room > 0) {
+                line.write(b, off, Math.min(len, room));
+            }
+        }
+
+        private void endLine() throws StopScan {
+            if (line.size() > 0) {
+                String text = ConsoleNote.removeNotes(new String(line.toByteArray(), StandardCharsets.UTF_8));
+                String searched = ignoreCase ? text.toLowerCase(Locale.ROOT) : text;
+                if (searched.contains(query)) {
+                    text = text.endsWith("\r") ? text.substring(0, text.length() - 1) : text;
+                    if (text.length() > MAX_LINE_CHARS) {
+                        text = text.substring(0, MAX_LINE_CHARS);
+                    }
+                    matches.add(new Match(stepId, lineStart, text));
+                    if (matches.size() == limit) {
+                        throw new StopScan();
+                    }
+                }
+                line.reset();
+            }
+            lineStart = position;
+        }
+    }
+
+    private static class StopScan extends IOException {
+        private static final long serialVersionUID = 1L;
+    }
+}
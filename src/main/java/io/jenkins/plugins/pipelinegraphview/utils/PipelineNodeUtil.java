@@ -10,7 +10,9 @@ import hudson.console.AnnotatedLargeText;
 import hudson.model.Action;
 import hudson.model.Queue;
 import hudson.model.queue.CauseOfBlockage;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Writer;
 import java.util.Arrays;
 import java.util.stream.Collectors;
@@ -33,6 +35,7 @@ import org.jenkinsci.plugins.workflow.steps.StepDescriptor;
 import org.jenkinsci.plugins.workflow.support.actions.PauseAction;
 import org.jenkinsci.plugins.workflow.support.steps.ExecutorStep;
 import org.jenkinsci.plugins.workflow.support.steps.input.InputAction;
+import org.kohsuke.stapler.framework.io.ByteBuffer;
 
 /** @author Vivek Pandey */
 public class PipelineNodeUtil {
@@ -47,6 +50,19 @@ public class PipelineNodeUtil {
                 : name;
     }
 
+    /*
+     * As 'getDisplayName(FlowNode)', but uses the given flags (see FlowNodeFlags) rather than reading
+     * the actions of the node again.
+     */
+    public static String getDisplayName(@NonNull FlowNode node, int flags) {
+        ThreadNameAction threadNameAction =
+                (flags & FlowNodeFlags.THREAD_NAME) != 0 ? node.getAction(ThreadNameAction.class) : null;
+        String name = threadNameAction != null ? threadNameAction.getThreadName() : node.getDisplayName();
+        return FlowNodeFlags.isSyntheticStage(flags) && name.startsWith(DECLARATIVE_DISPLAY_NAME_PREFIX)
+                ? name.substring(DECLARATIVE_DISPLAY_NAME_PREFIX.length())
+                : name;
+    }
+
     public static boolean isStage(FlowNode node) {
         return node != null
                 && ((node.getAction(StageAction.class) != null)
@@ -215,6 +231,10 @@ public class PipelineNodeUtil {
         return getDisplayName(node).startsWith("Execute in parallel");
     }
 
+    protected static boolean isParallelBlock(@NonNull FlowNode node, int flags) {
+        return getDisplayName(node, flags).startsWith("Execute in parallel");
+    }
+
     /**
      * Determine if the given {@link FlowNode} is the initial {@link StepStartNode}
      * for an {@link
@@ -288,6 +308,77 @@ public class PipelineNodeUtil {
         return stringWriter.toString();
     }
 
+    /*
+     * Reads the raw bytes of the log from 'startByte' up to (not including) 'endByte'. Reading stops
+     * at 'endByte', rather than going through the rest of the log.
+     * The window is cut back to the end of its last complete line, so lines are never split between
+     * windows - unless it doesn't contain a whole line, in which case it is returned as is so callers
+     * always make progress. The last line of a complete log is kept, even without a line break.
+     *
+     * @param log The AnnotatedLargeText object for a given node.
+     *
+     * @return The raw (still annotated) bytes of the window.
+     */
+    public static ByteBuffer readLogWindow(AnnotatedLargeText<? extends FlowNode> log, long startByte, long endByte)
+            throws IOException {
+        BoundedOutputStream out = new BoundedOutputStream(endByte - startByte);
+        try {
+            log.writeRawLogTo(startByte, out);
+        } catch (WindowFullException e) {
+            // Reached the end of the window.
+        }
+        byte[] bytes = out.toByteArray();
+        int length = bytes.length;
+        boolean endOfLog = log.isComplete() && endByte >= log.length();
+        if (!endOfLog && startByte + length == endByte && length > 0 && bytes[length - 1] != '\n') {
+            // Stopped part way through a line.
+            int lastLineEnd = length - 1;
+            while (lastLineEnd >= 0 && bytes[lastLineEnd] != '\n') {
+                lastLineEnd--;
+            }
+            if (lastLineEnd >= 0) {
+                length = lastLineEnd + 1;
+            }
+        }
+        ByteBuffer window = new ByteBuffer();
+        window.write(bytes, 0, length);
+        return window;
+    }
+
+    /*
+     * Keeps the first 'limit' bytes written to it, then stops the write.
+     */
+    private static class BoundedOutputStream extends OutputStream {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final long limit;
+
+        BoundedOutputStream(long limit) {
+            this.limit = limit;
+        }
+
+        byte[] toByteArray() {
+            return bytes.toByteArray();
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(@NonNull byte[] b, int off, int len) throws IOException {
+            long remaining = limit - bytes.size();
+            bytes.write(b, off, (int) Math.min(len, Math.max(remaining, 0)));
+            if (len >= remaining) {
+                throw new WindowFullException();
+            }
+        }
+    }
+
+    private static class WindowFullException extends IOException {
+        private static final long serialVersionUID = 1L;
+    }
+
     /*
      * The exception text from aa FlowNode.
      *
@@ -0,0 +1,388 @@
+package io.jenkins.plugins.pipelinegraphview.utils;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import jenkins.util.SystemProperties;
+import jenkins.util.Timer;
+import org.jenkinsci.plugins.workflow.flow.GraphListener;
+import org.jenkinsci.plugins.workflow.graph.FlowNode;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+import org.kohsuke.stapler.HttpResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pushes the state of running Pipelines to viewers as Server-Sent Events.
+ * Each viewer holds an async request open, so no request thread is used while waiting. When the
+ * execution adds nodes the state is rebuilt (at most once per 'debounceMillis') and sent to all
+ * viewers of that run. The state is also resent every 'refreshMillis' so durations keep updating
+ * while no nodes are added. Streams are closed once the run completes.
+ * Timer tasks only queue the work: the state is built on a small pool of our own, and each viewer is
+ * written to separately on another, so a slow viewer can't hold up the others. A viewer that is sent
+ * a new state before the last was written just gets the newer one, and a viewer whose write blocks
+ * for longer than 'writeTimeoutMillis' is dropped.
+ */
+@Extension
+public class PipelineRunEvents implements GraphListener {
+    private static final Logger logger = LoggerFactory.getLogger(PipelineRunEvents.class);
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private static final long DEBOUNCE_MILLIS =
+            SystemProperties.getLong(PipelineRunEvents.class.getName() + ".debounceMillis", 500L);
+    private static final long REFRESH_MILLIS =
+            SystemProperties.getLong(PipelineRunEvents.class.getName() + ".refreshMillis", 5000L);
+    // Clients reconnect automatically, this just stops streams being held open forever.
+    private static final long STREAM_TIMEOUT_MILLIS = SystemProperties.getLong(
+            PipelineRunEvents.class.getName() + ".streamTimeoutMillis", TimeUnit.MINUTES.toMillis(10));
+    private static final long WRITE_TIMEOUT_MILLIS = SystemProperties.getLong(
+            PipelineRunEvents.class.getName() + ".writeTimeoutMillis", TimeUnit.SECONDS.toMillis(30));
+    private static final int THREADS = SystemProperties.getInteger(PipelineRunEvents.class.getName() + ".threads", 2);
+
+    private static ThreadPoolExecutor buildExecutor;
+    private static ThreadPoolExecutor writeExecutor;
+
+    // Run URL => viewers of that run.
+    private final ConcurrentMap<String, RunStreams> runStreams = new ConcurrentHashMap<>();
+
+    public static PipelineRunEvents get() {
+        return ExtensionList.lookupSingleton(PipelineRunEvents.class);
+    }
+
+    private static synchronized ThreadPoolExecutor getBuildExecutor() {
+        if (buildExecutor == null) {
+            buildExecutor = newExecutor("PipelineGraphView run events");
+        }
+        return buildExecutor;
+    }
+
+    private static synchronized ThreadPoolExecutor getWriteExecutor() {
+        if (writeExecutor == null) {
+            writeExecutor = newExecutor("PipelineGraphView run event writer");
+        }
+        return writeExecutor;
+    }
+
+    private static ThreadPoolExecutor newExecutor(String name) {
+        // Threads are created on demand and die when idle.
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                THREADS,
+                THREADS,
+                60,
+                TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                new NamingThreadFactory(new DaemonThreadFactory(), name));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /*
+     * Returns a response that streams the state of the given run until it completes.
+     * If 'includeSteps' is true each event holds a PipelineRunState, otherwise a PipelineGraph.
+     */
+    @NonNull
+    public HttpResponse subscribe(@NonNull WorkflowRun run, boolean includeSteps) {
+        return (req, rsp, node) -> {
+            rsp.setStatus(200);
+            rsp.setContentType("text/event-stream;charset=UTF-8");
+            rsp.setHeader("Cache-Control", "no-cache");
+            // Stop proxies (e.g. nginx) from buffering the stream.
+            rsp.setHeader("X-Accel-Buffering", "no");
+            AsyncContext context = req.startAsync();
+            context.setTimeout(STREAM_TIMEOUT_MILLIS);
+            Subscriber subscriber = new Subscriber(context, includeSteps);
+            context.addListener(new AsyncListener() {
+                @Override
+                public void onComplete(AsyncEvent event) {
+                    removeSubscriber(run.getUrl(), subscriber);
+                }
+
+                @Override
+                public void onTimeout(AsyncEvent event) {
+                    subscriber.close();
+                }
+
+                @Override
+                public void onError(AsyncEvent event) {
+                    subscriber.close();
+                }
+
+                @Override
+                public void onStartAsync(AsyncEvent event) {}
+            });
+            // Add the subscriber atomically, so we can't race with the last subscriber being removed.
+            RunStreams streams = runStreams.compute(run.getUrl(), (url, existing) -> {
+                RunStreams runStream = existing != null ? existing : new RunStreams(run);
+                runStream.add(subscriber);
+                return runStream;
+            });
+            // Send the current state straight away, rather than waiting for something to change.
+            streams.broadcast();
+        };
+    }
+
+    private void removeSubscriber(String url, Subscriber subscriber) {
+        runStreams.computeIfPresent(url, (key, streams) -> streams.remove(subscriber) ? null : streams);
+    }
+
+    @Override
+    public void onNewHead(FlowNode node) {
+        if (runStreams.isEmpty()) {
+            return;
+        }
+        try {
+            RunStreams streams = runStreams.get(node.getExecution().getOwner().getUrl());
+            if (streams != null) {
+                streams.scheduleBroadcast();
+            }
+        } catch (IOException e) {
+            logger.warn("Could not get URL for owner of node " + node.getId(), e);
+        }
+    }
+
+    /*
+     * The viewers of a single run.
+     */
+    private static class RunStreams {
+        private final WorkflowRun run;
+        private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+        private final AtomicBoolean broadcastPending = new AtomicBoolean(false);
+        // Set when the state needs to be sent again, and while a broadcast is queued or running.
+        private final AtomicBoolean broadcastRequested = new AtomicBoolean(false);
+        private final AtomicBoolean broadcasting = new AtomicBoolean(false);
+        private final ScheduledFuture<?> refreshTask;
+
+        RunStreams(WorkflowRun run) {
+            this.run = run;
+            this.refreshTask = Timer.get()
+                    .scheduleWithFixedDelay(this::broadcast, REFRESH_MILLIS, REFRESH_MILLIS, TimeUnit.MILLISECONDS);
+        }
+
+        void add(Subscriber subscriber) {
+            subscribers.add(subscriber);
+        }
+
+        /*
+         * Removes the subscriber, returning true if there are no subscribers left.
+         */
+        boolean remove(Subscriber subscriber) {
+            subscribers.remove(subscriber);
+            if (subscribers.isEmpty()) {
+                refreshTask.cancel(false);
+                return true;
+            }
+            return false;
+        }
+
+        void scheduleBroadcast() {
+            if (broadcastPending.compareAndSet(false, true)) {
+                Timer.get()
+                        .schedule(
+                                () -> {
+                                    broadcastPending.set(false);
+                                    broadcast();
+                                },
+                                DEBOUNCE_MILLIS,
+                                TimeUnit.MILLISECONDS);
+            }
+        }
+
+        /*
+         * Queues sending the current state to all subscribers. Only one broadcast runs at a time for
+         * each run, so an older state can't be sent after a newer one, and requests made while one is
+         * running are coalesced into a single broadcast after it.
+         */
+        void broadcast() {
+            broadcastRequested.set(true);
+            if (broadcasting.compareAndSet(false, true)) {
+                try {
+                    getBuildExecutor().execute(this::runBroadcasts);
+                } catch (RuntimeException e) {
+                    // Don't let exceptions escape - they would cancel the refresh task.
+                    broadcasting.set(false);
+                    logger.warn("Failed to queue update for run " + run.getExternalizableId(), e);
+                }
+            }
+        }
+
+        private void runBroadcasts() {
+            try {
+                while (broadcastRequested.getAndSet(false)) {
+                    send();
+                }
+            } finally {
+                broadcasting.set(false);
+            }
+            // Requested after we last checked, but before we stopped running.
+            if (broadcastRequested.get()) {
+                broadcast();
+            }
+        }
+
+        /*
+         * Builds the current state and hands it to each subscriber to write. The state is only built
+         * once for each kind of subscriber.
+         */
+        private void send() {
+            try {
+                String graphJson = null;
+                String runStateJson = null;
+                boolean complete = false;
+                long now = System.currentTimeMillis();
+                for (Subscriber subscriber : subscribers) {
+                    if (subscriber.isStalled(now)) {
+                        logger.debug("Dropping stalled viewer of run " + run.getExternalizableId());
+                        subscriber.close();
+                        continue;
+                    }
+                    if (subscriber.includeSteps) {
+                        if (runStateJson == null) {
+                            PipelineRunState runState = PipelineRunState.of(run);
+                            complete |= runState.isComplete();
+                            runStateJson = OBJECT_MAPPER.writeValueAsString(runState);
+                        }
+                    } else if (graphJson == null) {
+                        PipelineGraph graph = new PipelineGraphApi(run).createTree();
+                        complete |= graph.isComplete();
+                        graphJson = OBJECT_MAPPER.writeValueAsString(graph);
+                    }
+                }
+                for (Subscriber subscriber : subscribers) {
+                    String json = subscriber.includeSteps ? runStateJson : graphJson;
+                    if (json != null) {
+                        // Subscribers close themselves once the final state has been written.
+                        subscriber.send(json, complete);
+                    }
+                }
+            } catch (JsonProcessingException | RuntimeException e) {
+                logger.warn("Failed to send update for run " + run.getExternalizableId(), e);
+            }
+        }
+    }
+
+    /*
+     * A single viewer, holding an open async request.
+     * Writes are done on the write executor, one at a time, without holding any lock.
+     */
+    private static class Subscriber {
+        private final AsyncContext context;
+        private final boolean includeSteps;
+        // The latest state that hasn't been written yet, replacing any older one.
+        private final AtomicReference<Event> pending = new AtomicReference<>();
+        private final AtomicBoolean writing = new AtomicBoolean(false);
+        // When the current write started, or 0 if not writing.
+        private volatile long writeStartedMillis = 0;
+        private volatile boolean closed = false;
+
+        Subscriber(AsyncContext context, boolean includeSteps) {
+            this.context = context;
+            this.includeSteps = includeSteps;
+        }
+
+        /*
+         * Queues the state to be written. If 'last' is true the stream is closed after writing it.
+         */
+        void send(String json, boolean last) {
+            if (closed) {
+                return;
+            }
+            pending.set(new Event(json, last));
+            if (writing.compareAndSet(false, true)) {
+                try {
+                    getWriteExecutor().execute(this::writePending);
+                } catch (RuntimeException e) {
+                    writing.set(false);
+                    throw e;
+                }
+            }
+        }
+
+        /*
+         * Returns true if a write has been blocked for longer than the write timeout.
+         */
+        boolean isStalled(long now) {
+            long started = writeStartedMillis;
+            return started != 0 && now - started > WRITE_TIMEOUT_MILLIS;
+        }
+
+        private void writePending() {
+            try {
+                Event event;
+                while (!closed && (event = pending.getAndSet(null)) != null) {
+                    write(event.json);
+                    if (event.last) {
+                        close();
+                    }
+                }
+            } finally {
+                writing.set(false);
+            }
+            // Sent after we last checked, but before we stopped writing.
+            if (!closed && pending.get() != null && writing.compareAndSet(false, true)) {
+                getWriteExecutor().execute(this::writePending);
+            }
+        }
+
+        private void write(String json) {
+            writeStartedMillis = System.currentTimeMillis();
+            try {
+                PrintWriter writer = context.getResponse().getWriter();
+                writer.write("event: update\ndata: " + json + "\n\n");
+                writer.flush();
+                if (writer.checkError()) {
+                    // The client has gone away.
+                    close();
+                }
+            } catch (IOException | IllegalStateException e) {
+                close();
+            } finally {
+                writeStartedMillis = 0;
+            }
+        }
+
+        void close() {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+            }
+            try {
+                // Triggers the AsyncListener, which removes this subscriber.
+                context.complete();
+            } catch (IllegalStateException e) {
+                // Already completed.
+                logger.debug("Event stream already completed", e);
+            }
+        }
+    }
+
+    private static class Event {
+        private final String json;
+        private final boolean last;
+
+        Event(String json, boolean last) {
+            this.json = json;
+            this.last = last;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package io.jenkins.plugins.pipelinegraphview.utils;
+
+import com.google.common.base.Suppliers;
+import io.jenkins.plugins.pipelinegraphview.treescanner.PipelineNodeGraphAdapter;
+import java.util.List;
+import java.util.function.Supplier;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+
+/*
+ * The stages and steps of a run, built from the same scan so they are consistent with each other.
+ */
+public class PipelineRunState {
+
+    private PipelineGraph graph;
+    private PipelineStepList steps;
+
+    public PipelineRunState(PipelineGraph graph, PipelineStepList steps) {
+        this.graph = graph;
+        this.steps = steps;
+    }
+
+    /*
+     * Gets the current state of the given run.
+     */
+    public static PipelineRunState of(WorkflowRun run) {
+        // Only get the adapter if one of the graph or steps isn't already cached, and share it between them.
+        Supplier<PipelineNodeGraphAdapter> adapter =
+                Suppliers.memoize(() -> PipelineGraphViewCache.get().getAdapter(run));
+        PipelineGraph graph = new PipelineGraphApi(run).createTree(adapter);
+        PipelineStepList steps = new PipelineStepApi(run).getAllSteps(adapter);
+        return new PipelineRunState(graph, steps);
+    }
+
+    public boolean isComplete() {
+        return graph.isComplete();
+    }
+
+    public List<PipelineStage> getStages() {
+        return graph.getStages();
+    }
+
+    public List<PipelineStep> getSteps() {
+        return steps.getSteps();
+    }
+}
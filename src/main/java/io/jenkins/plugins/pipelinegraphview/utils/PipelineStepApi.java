@@ -5,6 +5,8 @@ import io.jenkins.plugins.pipelinegraphview.utils.legacy.PipelineStepVisitor;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import org.jenkinsci.plugins.workflow.job.WorkflowRun;
 import org.slf4j.Logger;
@@ -12,6 +14,7 @@ import org.slf4j.LoggerFactory;
 
 public class PipelineStepApi {
     private static final Logger logger = LoggerFactory.getLogger(PipelineStepApi.class);
+    private static final Pattern ANSI_COLOR_CODE = Pattern.compile("\\[\\d+m");
     private final transient WorkflowRun run;
 
     public PipelineStepApi(WorkflowRun run) {
@@ -22,43 +25,33 @@ public class PipelineStepApi {
         if (logger.isDebugEnabled()) {
             logger.debug("PipelineStepApi steps: '" + stepNodes + "'.");
         }
+        Map<String, StepLabel> stepLabels = PipelineGraphViewCache.get().getStepLabels(run);
         List<PipelineStep> steps = stepNodes.stream()
                 .map(flowNodeWrapper -> {
                     String state =
                             flowNodeWrapper.getStatus().getResult().name().toLowerCase(Locale.ROOT);
-                    if (flowNodeWrapper.getStatus().getState() != BlueRun.BlueRunState.FINISHED) {
+                    boolean finished = flowNodeWrapper.getStatus().getState() == BlueRun.BlueRunState.FINISHED;
+                    if (!finished) {
                         state = flowNodeWrapper.getStatus().getState().name().toLowerCase(Locale.ROOT);
                     }
 
-                    String displayName = flowNodeWrapper.getDisplayName();
-                    String title = "";
-                    if (flowNodeWrapper.getType() == FlowNodeWrapper.NodeType.UNHANDLED_EXCEPTION) {
-                        displayName = "Pipeline error";
-                    } else {
-                        String stepArguments = flowNodeWrapper.getArgumentsAsString();
-                        if (stepArguments != null && !stepArguments.isEmpty()) {
-                            displayName = stepArguments;
-                            title = flowNodeWrapper.getDisplayName();
-                        }
-                        // Use the step label as the displayName if set
-                        String labelDisplayName = flowNodeWrapper.getLabelDisplayName();
-                        if (labelDisplayName != null && !labelDisplayName.isEmpty()) {
-                            displayName = labelDisplayName;
-                            title = "";
+                    // The label of a finished step can't change, so only render it once.
+                    String labelKey = flowNodeWrapper.getId() + ":" + flowNodeWrapper.getType();
+                    StepLabel label = stepLabels.get(labelKey);
+                    if (label == null) {
+                        label = renderLabel(flowNodeWrapper);
+                        if (finished) {
+                            stepLabels.put(labelKey, label);
                         }
                     }
-                    // Remove non-printable chars (e.g. ANSI color codes).
-                    logger.debug("DisplayName Before: '" + displayName + "'.");
-                    displayName = cleanTextContent(displayName);
-                    logger.debug("DisplayName After: '" + displayName + "'.");
 
                     return new PipelineStep(
                             flowNodeWrapper.getId(),
-                            displayName,
+                            label.displayName,
                             state,
                             50, // TODO how ???
                             flowNodeWrapper.getType().name(),
-                            title, // TODO blue ocean uses timing information: "Passed in
+                            label.title, // TODO blue ocean uses timing information: "Passed in
                             // 0s"
                             stageId,
                             flowNodeWrapper.getTiming());
@@ -67,9 +60,36 @@ public class PipelineStepApi {
         return steps;
     }
 
+    private static StepLabel renderLabel(FlowNodeWrapper flowNodeWrapper) {
+        String displayName = flowNodeWrapper.getDisplayName();
+        String title = "";
+        if (flowNodeWrapper.getType() == FlowNodeWrapper.NodeType.UNHANDLED_EXCEPTION) {
+            displayName = "Pipeline error";
+        } else {
+            String stepArguments = flowNodeWrapper.getArgumentsAsString();
+            if (stepArguments != null && !stepArguments.isEmpty()) {
+                displayName = stepArguments;
+                title = flowNodeWrapper.getDisplayName();
+            }
+            // Use the step label as the displayName if set
+            String labelDisplayName = flowNodeWrapper.getLabelDisplayName();
+            if (labelDisplayName != null && !labelDisplayName.isEmpty()) {
+                displayName = labelDisplayName;
+                title = "";
+            }
+        }
+        // Remove non-printable chars (e.g. ANSI color codes).
+        String cleanDisplayName = cleanTextContent(displayName);
+        if (logger.isDebugEnabled()) {
+            logger.debug("DisplayName Before: '" + displayName + "'.");
+            logger.debug("DisplayName After: '" + cleanDisplayName + "'.");
+        }
+        return new StepLabel(cleanDisplayName, title);
+    }
+
     private static String cleanTextContent(String text) {
         // strips off all ANSI color codes
-        text = text.replaceAll("\\[\\d+m", "");
+        text = ANSI_COLOR_CODE.matcher(text).replaceAll("");
         return text.trim();
     }
 
@@ -92,12 +112,28 @@ public class PipelineStepApi {
     }
 
     public PipelineStepList getSteps(String stageId) {
-        return getSteps(stageId, new PipelineNodeGraphAdapter(run));
+        if (PipelineGraphViewCache.isComplete(run)) {
+            // Completed runs can't change, so filter the cached list of all steps rather than rescanning.
+            return new PipelineStepList(getAllSteps().getSteps().stream()
+                    .filter(step -> step.getStageId().equals(stageId))
+                    .collect(Collectors.toList()));
+        }
+        return getSteps(stageId, PipelineGraphViewCache.get().getAdapter(run));
     }
 
     /* Returns a PipelineStepList, sorted by stageId and Id. */
     public PipelineStepList getAllSteps() {
-        return getAllSteps(new PipelineNodeGraphAdapter(run));
+        return getAllSteps(() -> PipelineGraphViewCache.get().getAdapter(run));
+    }
+
+    /*
+     * Gets all steps from the adapter given by 'adapterSupplier'. The supplier is only called if
+     * the steps aren't already cached.
+     * Returns a PipelineStepList, sorted by stageId and Id.
+     */
+    public PipelineStepList getAllSteps(Supplier<PipelineNodeGraphAdapter> adapterSupplier) {
+        // Completed runs can't change, so only build their steps once.
+        return PipelineGraphViewCache.get().getAllSteps(run, () -> getAllSteps(adapterSupplier.get()));
     }
 
     /**
@@ -118,4 +154,17 @@ public class PipelineStepApi {
     protected PipelineStepList getAllLegacySteps() {
         return getAllSteps(new PipelineStepVisitor(run));
     }
+
+    /*
+     * The rendered display name and title of a step.
+     */
+    static final class StepLabel {
+        final String displayName;
+        final String title;
+
+        StepLabel(String displayName, String title) {
+            this.displayName = displayName;
+            this.title = title;
+        }
+    }
 }
@@ -7,10 +7,30 @@ import hudson.Functions;
 import hudson.model.Result;
 import io.jenkins.plugins.pipelinegraphview.treescanner.PipelineNodeGraphAdapter;
 import io.jenkins.plugins.pipelinegraphview.utils.FlowNodeWrapper;
+import io.jenkins.plugins.pipelinegraphview.utils.PipelineGraphViewCache;
+import io.jenkins.plugins.pipelinegraphview.utils.PipelineGraphViewStore;
+import io.jenkins.plugins.pipelinegraphview.utils.PipelineRunState;
+import io.jenkins.plugins.pipelinegraphview.utils.PipelineStep;
 import io.jenkins.plugins.pipelinegraphview.utils.TestUtils;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import net.sf.json.JSONArray;
 import net.sf.json.JSONObject;
+import org.jenkinsci.plugins.workflow.graph.FlowNode;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
 import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+import org.jenkinsci.plugins.workflow.test.steps.SemaphoreStep;
 import org.junit.Rule;
 import org.junit.Test;
 import org.jvnet.hudson.test.Issue;
@@ -154,4 +174,311 @@ public class PipelineConsoleViewActionTest {
                 consoleJson.getString("text"),
                 stringContainsInOrder("echo", "Hello, world!", "script returned exit code 1"));
     }
+
+    @Test
+    public void logEndpointStreamsStepLogsInOrder() throws Exception {
+        WorkflowRun run =
+                TestUtils.createAndRunJob(j, "multiple_step_logs", "multipleStepLogs.jenkinsfile", Result.SUCCESS);
+        String stageId = TestUtils.getNodesByDisplayName(run, "Build").get(0).getId();
+
+        JenkinsRule.WebClient webClient = j.createWebClient();
+        String stageLog = webClient
+                .goTo(run.getUrl() + PipelineConsoleViewAction.URL_NAME + "/log?nodeId=" + stageId, "text/plain")
+                .getWebResponse()
+                .getContentAsString();
+        int first = stageLog.indexOf("First step");
+        int second = stageLog.indexOf("Second step");
+        int third = stageLog.indexOf("Third step");
+        assertThat(first, greaterThanOrEqualTo(0));
+        assertThat(second, greaterThan(first));
+        assertThat(third, greaterThan(second));
+
+        // A single step returns just its own log.
+        String secondStepId = new PipelineConsoleViewAction(run)
+                .getRunState()
+                .getSteps()
+                .get(1)
+                .getId();
+        String stepLog = webClient
+                .goTo(run.getUrl() + PipelineConsoleViewAction.URL_NAME + "/log?nodeId=" + secondStepId, "text/plain")
+                .getWebResponse()
+                .getContentAsString();
+        assertThat(stepLog.trim(), equalTo("Second step"));
+    }
+
+    @Test
+    public void getConsoleOutputReturnsWindowOfLines() throws Exception {
+        WorkflowRun run = TestUtils.createAndRunJob(j, "many_log_lines", "manyLogLines.jenkinsfile", Result.SUCCESS);
+        PipelineConsoleViewAction consoleAction = new PipelineConsoleViewAction(run);
+        String stepId = consoleAction.getRunState().getSteps().get(0).getId();
+
+        JSONObject window = consoleAction.getConsoleOutputLinesJson(stepId, 200, 3);
+        assertThat(window.getString("text"), equalTo("line 200\nline 201\nline 202\n"));
+        assertThat(window.getLong("startLine"), equalTo(200L));
+        assertThat(window.getLong("endLine"), equalTo(203L));
+        assertThat(window.getLong("lineCount"), equalTo(500L));
+
+        JSONObject tail = consoleAction.getConsoleOutputLinesJson(stepId, -1, 10);
+        assertThat(tail.getString("text"), equalTo("line 499\n"));
+        assertThat(tail.getLong("startLine"), equalTo(499L));
+
+        // The index of the finished step is kept beside the build's logs.
+        assertThat(new File(run.getRootDir(), "pipeline-graph-view-line-index/" + stepId + ".idx").isFile(), is(true));
+    }
+
+    @Test
+    public void getConsoleOutputReturnsBoundedWindowsOfWholeLines() throws Exception {
+        WorkflowRun run = TestUtils.createAndRunJob(j, "bounded_windows", "manyLogLines.jenkinsfile", Result.SUCCESS);
+        PipelineConsoleViewAction consoleAction = new PipelineConsoleViewAction(run);
+        String stepId = consoleAction.getRunState().getSteps().get(0).getId();
+        String fullText = consoleAction.getConsoleOutputJson(stepId, 0L).getString("text");
+
+        StringBuilder text = new StringBuilder();
+        long startByte = 0;
+        JSONObject window;
+        do {
+            window = consoleAction.getConsoleOutputJson(stepId, startByte, null, 100);
+            assertThat(window.getLong("startByte"), equalTo(startByte));
+            assertThat(window.getLong("endByte") - startByte, lessThanOrEqualTo(100L));
+            if (window.getBoolean("hasMore")) {
+                assertThat(window.getString("text"), endsWith("\n"));
+            }
+            text.append(window.getString("text"));
+            startByte = window.getLong("endByte");
+        } while (window.getBoolean("hasMore"));
+        assertThat(text.toString(), equalTo(fullText));
+
+        // An explicit endByte also bounds the window.
+        JSONObject first = consoleAction.getConsoleOutputJson(stepId, 0L, 10L, 100);
+        assertThat(first.getString("text"), equalTo("line 0\n"));
+        assertThat(first.getLong("endByte"), equalTo(7L));
+        assertThat(first.getBoolean("hasMore"), is(true));
+
+        // A window that can't hold anything doesn't claim there is more, or the client would ask forever.
+        JSONObject empty = consoleAction.getConsoleOutputJson(stepId, -10L, 5L, 100);
+        assertThat(empty.getString("text"), equalTo(""));
+        assertThat(empty.getBoolean("hasMore"), is(false));
+
+        JenkinsRule.WebClient webClient = j.createWebClient();
+        JSONObject rejected = JSONObject.fromObject(webClient
+                .goTo(
+                        run.getUrl() + PipelineConsoleViewAction.URL_NAME + "/consoleOutput?nodeId=" + stepId
+                                + "&startByte=10&endByte=10",
+                        "application/json")
+                .getWebResponse()
+                .getContentAsString());
+        assertThat(rejected.getString("status"), equalTo("error"));
+    }
+
+    @Test
+    public void getRunStateReturnsStagesAndSteps() throws Exception {
+        WorkflowRun run = TestUtils.createAndRunJob(
+                j, "hello_world_scripted", "helloWorldScriptedPipeline.jenkinsfile", Result.SUCCESS);
+        String stageId =
+                TestUtils.getNodesByDisplayName(run, "Say Hello").get(0).getId();
+
+        PipelineConsoleViewAction consoleAction = new PipelineConsoleViewAction(run);
+        PipelineRunState runState = consoleAction.getRunState();
+        assertThat(runState.isComplete(), is(true));
+        assertThat(runState.getStages().size(), equalTo(1));
+        assertThat(runState.getStages().get(0).getName(), equalTo("Say Hello"));
+        assertThat(runState.getSteps().size(), equalTo(1));
+        assertThat(runState.getSteps().get(0).getStageId(), equalTo(stageId));
+    }
+
+    @Test
+    public void runStateEndpointStreamsJsonEnvelope() throws Exception {
+        WorkflowRun run = TestUtils.createAndRunJob(
+                j, "hello_world_scripted", "helloWorldScriptedPipeline.jenkinsfile", Result.SUCCESS);
+
+        JenkinsRule.WebClient webClient = j.createWebClient();
+        JSONObject json = JSONObject.fromObject(webClient
+                .goTo(run.getUrl() + PipelineConsoleViewAction.URL_NAME + "/runState", "application/json")
+                .getWebResponse()
+                .getContentAsString());
+        assertThat(json.getString("status"), equalTo("ok"));
+        JSONObject data = json.getJSONObject("data");
+        assertThat(data.getBoolean("complete"), is(true));
+        JSONArray stages = data.getJSONArray("stages");
+        assertThat(stages.getJSONObject(0).getString("name"), equalTo("Say Hello"));
+        assertThat(data.getJSONArray("steps").size(), equalTo(1));
+    }
+
+    @Test
+    public void completedRunIsStreamedFromBuildDirectory() throws Exception {
+        WorkflowRun run = TestUtils.createAndRunJob(
+                j, "hello_world_scripted", "helloWorldScriptedPipeline.jenkinsfile", Result.SUCCESS);
+        assertThat(PipelineGraphViewStore.getFile(run, PipelineGraphViewStore.TREE_FILE), notNullValue());
+        assertThat(PipelineGraphViewStore.getFile(run, PipelineGraphViewStore.ALL_STEPS_FILE), notNullValue());
+
+        JenkinsRule.WebClient webClient = j.createWebClient();
+        JSONObject tree = JSONObject.fromObject(webClient
+                .goTo(run.getUrl() + PipelineConsoleViewAction.URL_NAME + "/tree", "application/json")
+                .getWebResponse()
+                .getContentAsString());
+        assertThat(tree.getString("status"), equalTo("ok"));
+        JSONObject graph = tree.getJSONObject("data");
+        assertThat(graph.getBoolean("complete"), is(true));
+        JSONObject stage = graph.getJSONArray("stages").getJSONObject(0);
+        assertThat(stage.getString("name"), equalTo("Say Hello"));
+        // The raw start time is stored, but the response has the same text as a freshly built graph.
+        assertThat(stage.has("startTimeEpochMillis"), is(false));
+        assertThat(stage.getString("startTimeMillis"), startsWith("Started "));
+
+        JSONObject allSteps = JSONObject.fromObject(webClient
+                .goTo(run.getUrl() + PipelineConsoleViewAction.URL_NAME + "/allSteps", "application/json")
+                .getWebResponse()
+                .getContentAsString());
+        JSONArray steps = allSteps.getJSONObject("data").getJSONArray("steps");
+        assertThat(steps.size(), equalTo(1));
+        assertThat(steps.getJSONObject(0).getString("startTimeMillis"), startsWith("Started "));
+    }
+
+    @Test
+    public void runStateEndpointReturnsNotModifiedForMatchingETag() throws Exception {
+        WorkflowRun run = TestUtils.createAndRunJob(
+                j, "hello_world_scripted", "helloWorldScriptedPipeline.jenkinsfile", Result.SUCCESS);
+        URL url = new URL(j.getURL(), run.getUrl() + PipelineConsoleViewAction.URL_NAME + "/runState");
+
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        assertThat(connection.getResponseCode(), equalTo(200));
+        String etag = connection.getHeaderField("ETag");
+        assertThat(etag, equalTo(PipelineGraphViewCache.getETag(run)));
+        connection.disconnect();
+
+        connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestProperty("If-None-Match", etag);
+        assertThat(connection.getResponseCode(), equalTo(304));
+        connection.disconnect();
+
+        connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestProperty("If-None-Match", "\"some-other-revision\"");
+        assertThat(connection.getResponseCode(), equalTo(200));
+        connection.disconnect();
+    }
+
+    @Test
+    public void tailEndpointWaitsForStepToWriteOrFinish() throws Exception {
+        WorkflowJob job = TestUtils.createJob(j, "tail_log", "tailLog.jenkinsfile");
+        WorkflowRun run = job.scheduleBuild2(0).waitForStart();
+        SemaphoreStep.waitForStart("tail/1", run);
+        FlowNode semaphoreNode = run.getExecution().getCurrentHeads().get(0);
+        FlowNode echoNode = semaphoreNode.getParents().get(0);
+
+        // There is already output, so it is returned straight away.
+        JSONObject echoTail = readTail(run, echoNode.getId(), 0);
+        assertThat(echoTail.getString("text"), containsString("Hello, tail!"));
+        assertThat(echoTail.getBoolean("complete"), is(true));
+
+        // The semaphore hasn't written anything, so the request waits until it finishes.
+        CompletableFuture<JSONObject> semaphoreTail = CompletableFuture.supplyAsync(() -> {
+            try {
+                return readTail(run, semaphoreNode.getId(), 0);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        Thread.sleep(1000);
+        assertThat(semaphoreTail.isDone(), is(false));
+        SemaphoreStep.success("tail/1", null);
+        assertThat(semaphoreTail.get(20, TimeUnit.SECONDS).getBoolean("complete"), is(true));
+        j.waitForCompletion(run);
+    }
+
+    private JSONObject readTail(WorkflowRun run, String nodeId, long startByte) throws IOException {
+        URL url = new URL(
+                j.getURL(),
+                run.getUrl() + PipelineConsoleViewAction.URL_NAME + "/tail?nodeId=" + nodeId + "&startByte="
+                        + startByte + "&timeoutMillis=20000");
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setReadTimeout(60000);
+        try (InputStream in = connection.getInputStream()) {
+            assertThat(connection.getResponseCode(), equalTo(200));
+            return JSONObject.fromObject(new String(in.readAllBytes(), StandardCharsets.UTF_8))
+                    .getJSONObject("data");
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    @Test
+    public void searchEndpointFindsLinesAcrossSteps() throws Exception {
+        WorkflowRun run =
+                TestUtils.createAndRunJob(j, "search_step_logs", "multipleStepLogs.jenkinsfile", Result.SUCCESS);
+        List<String> stepIds = new ArrayList<>();
+        for (PipelineStep step : new PipelineConsoleViewAction(run).getRunState().getSteps()) {
+            stepIds.add(step.getId());
+        }
+
+        JSONObject limited = search(run, "q=step&limit=2");
+        JSONArray results = limited.getJSONArray("results");
+        assertThat(results.size(), equalTo(2));
+        assertThat(results.getJSONObject(0).getString("stepId"), equalTo(stepIds.get(0)));
+        assertThat(results.getJSONObject(0).getString("line"), equalTo("First step"));
+        assertThat(results.getJSONObject(0).getLong("byteOffset"), equalTo(0L));
+        assertThat(results.getJSONObject(1).getString("stepId"), equalTo(stepIds.get(1)));
+        assertThat(limited.getBoolean("truncated"), is(true));
+
+        JSONObject ignoringCase = search(run, "q=THIRD");
+        assertThat(ignoringCase.getJSONArray("results").size(), equalTo(1));
+        assertThat(ignoringCase.getJSONArray("results").getJSONObject(0).getString("stepId"), equalTo(stepIds.get(2)));
+        assertThat(ignoringCase.getBoolean("truncated"), is(false));
+
+        assertThat(search(run, "q=THIRD&ignoreCase=false").getJSONArray("results"), empty());
+
+        // Completed runs return the same (cached) results again.
+        assertThat(search(run, "q=step&limit=2").toString(), equalTo(limited.toString()));
+    }
+
+    private JSONObject search(WorkflowRun run, String query) throws Exception {
+        String json = j.createWebClient()
+                .goTo(run.getUrl() + PipelineConsoleViewAction.URL_NAME + "/search?" + query, "application/json")
+                .getWebResponse()
+                .getContentAsString();
+        return JSONObject.fromObject(json).getJSONObject("data");
+    }
+
+    @Test
+    public void eventsEndpointPushesUpdatesUntilComplete() throws Exception {
+        WorkflowJob job = TestUtils.createJob(j, "incrementalGraphModel", "incrementalGraphModel.jenkinsfile");
+        WorkflowRun run = job.scheduleBuild2(0).waitForStart();
+        SemaphoreStep.waitForStart("a/1", run);
+
+        URL url = new URL(j.getURL(), run.getUrl() + PipelineConsoleViewAction.URL_NAME + "/events?steps=false");
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setReadTimeout(60000);
+        assertThat(connection.getResponseCode(), equalTo(200));
+        assertThat(connection.getContentType(), startsWith("text/event-stream"));
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8))) {
+            // We are sent the current state straight away.
+            JSONObject first = readEvent(reader);
+            assertThat(first.getBoolean("complete"), is(false));
+            assertThat(first.getJSONArray("stages").getJSONObject(0).getString("name"), equalTo("A"));
+
+            SemaphoreStep.success("a/1", null);
+            SemaphoreStep.waitForStart("b/1", run);
+            SemaphoreStep.success("b/1", null);
+
+            // Then updates until the run completes, at which point the stream is closed.
+            JSONObject last = first;
+            for (JSONObject event = readEvent(reader); event != null; event = readEvent(reader)) {
+                last = event;
+            }
+            assertThat(last.getBoolean("complete"), is(true));
+            assertThat(last.getJSONArray("stages").size(), equalTo(2));
+        }
+        j.waitForCompletion(run);
+    }
+
+    // Reads the data of the next Server-Sent Event, or returns null at the end of the stream.
+    private static JSONObject readEvent(BufferedReader reader) throws IOException {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.startsWith("data: ")) {
+                return JSONObject.fromObject(line.substring("data: ".length()));
+            }
+        }
+        return null;
+    }
 }
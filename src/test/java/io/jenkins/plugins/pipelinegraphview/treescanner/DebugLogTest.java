@@ -0,0 +1,111 @@
+package io.jenkins.plugins.pipelinegraphview.treescanner;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assume.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DebugLogTest {
+    private static final int ITERATIONS = 1_000_000;
+
+    // Keep a strong reference, otherwise the level could be lost if the logger is garbage collected.
+    private final Logger julLogger = Logger.getLogger(DebugLogTest.class.getName());
+    private Level originalLevel;
+
+    @Before
+    public void saveLevel() {
+        originalLevel = julLogger.getLevel();
+    }
+
+    @After
+    public void restoreLevel() {
+        julLogger.setLevel(originalLevel);
+    }
+
+    @Test
+    public void dumpDoesNotAllocateWhenDebugDisabled() {
+        com.sun.management.ThreadMXBean threadBean;
+        try {
+            threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        } catch (ClassCastException e) {
+            threadBean = null;
+        }
+        assumeTrue(threadBean != null && threadBean.isThreadAllocatedMemorySupported());
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+
+        julLogger.setLevel(Level.INFO);
+        DebugLog log = new DebugLog(DebugLogTest.class);
+        assertThat(log.isEnabled(), is(false));
+
+        String id = "42";
+        String name = "Stage";
+        List<String> knownNodes = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            knownNodes.add(String.valueOf(i));
+        }
+        long threadId = Thread.currentThread().getId();
+        // Warm up, so class loading and compilation aren't counted.
+        logInLoop(log, id, name, knownNodes);
+
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        logInLoop(log, id, name, knownNodes);
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - before;
+
+        // Formatting a single message allocates more than this, so any per-call allocation
+        // (e.g. a varargs array or formatted string) over a million iterations would fail.
+        assertThat(allocated, lessThan(64L * 1024));
+    }
+
+    private static void logInLoop(DebugLog log, String id, String name, List<String> knownNodes) {
+        for (int i = 0; i < ITERATIONS; i++) {
+            log.dump("Building graph");
+            log.dump("Wrapping %s", id);
+            log.dump("Checking if %s in %s", id, knownNodes);
+            log.dump("Adding %s to %s (%s)", id, name, knownNodes);
+            log.dump("Adding step for %s(%s),%s(%s)", id, name, id, name);
+            log.dump("Seeded model with %s nodes", knownNodes.size());
+            log.dump("Prefetching %s nodes on %s threads", i, 4);
+            log.dump("Returning %s steps for node '%s'", knownNodes.size(), id);
+            log.dump("Remapping %s steps from stage %s to %s.", i, id, name);
+        }
+    }
+
+    @Test
+    public void dumpFormatsMessageWhenDebugEnabled() {
+        julLogger.setLevel(Level.FINE);
+        List<String> messages = new ArrayList<>();
+        Handler handler = new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                messages.add(record.getMessage());
+            }
+
+            @Override
+            public void flush() {}
+
+            @Override
+            public void close() {}
+        };
+        julLogger.addHandler(handler);
+        try {
+            DebugLog log = new DebugLog(DebugLogTest.class);
+            assertThat(log.isEnabled(), is(true));
+            log.dump("Checking if %s in %s", "2", List.of("1", "2"));
+            log.dump("%s-%s-%s-%s-%s", "a", "b", "c", "d", "e");
+            log.dump("Prefetching %s nodes on %s threads", 500, 4);
+        } finally {
+            julLogger.removeHandler(handler);
+        }
+        assertThat(messages, contains("Checking if 2 in [1, 2]", "a-b-c-d-e", "Prefetching 500 nodes on 4 threads"));
+    }
+}
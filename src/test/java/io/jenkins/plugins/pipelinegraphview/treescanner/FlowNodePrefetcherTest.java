@@ -0,0 +1,81 @@
+package io.jenkins.plugins.pipelinegraphview.treescanner;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assume.assumeTrue;
+
+import hudson.model.Result;
+import io.jenkins.plugins.pipelinegraphview.utils.FlowNodeWrapper;
+import io.jenkins.plugins.pipelinegraphview.utils.TestUtils;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+public class FlowNodePrefetcherTest {
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    // Keep a strong reference, otherwise the level could be lost if the logger is garbage collected.
+    private final Logger julLogger = Logger.getLogger(FlowNodePrefetcher.class.getName());
+    private final List<String> messages = new ArrayList<>();
+    private final Handler handler = new Handler() {
+        @Override
+        public void publish(LogRecord record) {
+            messages.add(record.getMessage());
+        }
+
+        @Override
+        public void flush() {}
+
+        @Override
+        public void close() {}
+    };
+    private Level originalLevel;
+
+    @Before
+    public void addHandler() {
+        originalLevel = julLogger.getLevel();
+        julLogger.setLevel(Level.FINE);
+        julLogger.addHandler(handler);
+    }
+
+    @After
+    public void removeHandler() {
+        julLogger.removeHandler(handler);
+        julLogger.setLevel(originalLevel);
+        System.clearProperty(FlowNodePrefetcher.MIN_NODES_PROPERTY);
+    }
+
+    @Test
+    public void completedRunIsPrefetchedAndScannedTheSame() throws Exception {
+        assumeTrue(FlowNodePrefetcher.isEnabled());
+        WorkflowRun run = TestUtils.createAndRunJob(
+                j, "complexParallelSmokes", "complexParallelSmokes.jenkinsfile", Result.SUCCESS);
+
+        // The run is smaller than the default minimum, so isn't prefetched.
+        String expected = describe(new PipelineNodeTreeScanner(run));
+        assertThat(messages, not(hasItem(startsWith("Prefetching "))));
+
+        System.setProperty(FlowNodePrefetcher.MIN_NODES_PROPERTY, "1");
+        String prefetched = describe(new PipelineNodeTreeScanner(run));
+        assertThat(messages, hasItem(startsWith("Prefetching ")));
+        assertThat(prefetched, equalTo(expected));
+    }
+
+    private static String describe(PipelineNodeTreeScanner scanner) {
+        List<FlowNodeWrapper> nodes = new ArrayList<>(scanner.getPipelineNodes());
+        for (List<FlowNodeWrapper> steps : scanner.getAllSteps().values()) {
+            nodes.addAll(steps);
+        }
+        return FlowNodeWrapper.getNodeGraphviz(nodes);
+    }
+}
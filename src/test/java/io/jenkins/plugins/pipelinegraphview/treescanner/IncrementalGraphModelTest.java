@@ -0,0 +1,52 @@
+package io.jenkins.plugins.pipelinegraphview.treescanner;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import hudson.model.queue.QueueTaskFuture;
+import io.jenkins.plugins.pipelinegraphview.utils.PipelineGraphApi;
+import io.jenkins.plugins.pipelinegraphview.utils.PipelineStage;
+import io.jenkins.plugins.pipelinegraphview.utils.TestUtils;
+import java.util.List;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+import org.jenkinsci.plugins.workflow.test.steps.SemaphoreStep;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+public class IncrementalGraphModelTest {
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    @Test
+    public void closedBlocksAreRememberedBetweenBuilds() throws Exception {
+        WorkflowJob job = TestUtils.createJob(j, "incrementalGraphModel", "incrementalGraphModel.jenkinsfile");
+        QueueTaskFuture<WorkflowRun> futureRun = job.scheduleBuild2(0);
+        WorkflowRun run = futureRun.waitForStart();
+
+        SemaphoreStep.waitForStart("a/1", run);
+        List<PipelineStage> runningA = new PipelineGraphApi(run).createTree().getStages();
+        IncrementalGraphModel model = IncrementalGraphModel.forExecution(run.getExecution());
+        assertThat(model, notNullValue());
+        // Stage A is still running, so must be recomputed next time.
+        String stageAId = runningA.get(0).getId();
+        assertThat(model.getClosedNode(stageAId), nullValue());
+
+        SemaphoreStep.success("a/1", null);
+        SemaphoreStep.waitForStart("b/1", run);
+        List<PipelineStage> runningB = new PipelineGraphApi(run).createTree().getStages();
+        assertThat(runningB.get(0).getState(), equalTo("success"));
+        // Stage A has closed, but B hasn't.
+        IncrementalGraphModel.ClosedNode closedA = model.getClosedNode(stageAId);
+        assertThat(closedA, notNullValue());
+        assertThat(model.getClosedNode(runningB.get(1).getId()), nullValue());
+
+        // Later builds reuse the same status and timing for stage A.
+        new PipelineGraphApi(run).createTree();
+        assertThat(model.getClosedNode(stageAId), sameInstance(closedA));
+
+        SemaphoreStep.success("b/1", null);
+        j.waitForCompletion(run);
+    }
+}
@@ -0,0 +1,103 @@
+package io.jenkins.plugins.pipelinegraphview.treescanner;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assume.assumeTrue;
+
+import hudson.model.Result;
+import io.jenkins.plugins.pipelinegraphview.utils.TestUtils;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+public class PipelineNodeTreeScannerTest {
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    // Keep a strong reference, otherwise the level could be lost if the logger is garbage collected.
+    private final Logger julLogger = Logger.getLogger(PipelineNodeTreeScanner.class.getPackage().getName());
+    private Level originalLevel;
+
+    @Before
+    public void saveLevel() {
+        originalLevel = julLogger.getLevel();
+    }
+
+    @After
+    public void restoreLevel() {
+        julLogger.setLevel(originalLevel);
+    }
+
+    @Test
+    public void scanBuildsNoDebugMessagesWhenDebugDisabled() throws Exception {
+        com.sun.management.ThreadMXBean threadBean;
+        try {
+            threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        } catch (ClassCastException e) {
+            threadBean = null;
+        }
+        assumeTrue(threadBean != null && threadBean.isThreadAllocatedMemorySupported());
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+
+        WorkflowRun run = TestUtils.createAndRunJob(
+                j, "complexParallelSmokes", "complexParallelSmokes.jenkinsfile", Result.SUCCESS);
+
+        // Only count messages logged by this thread, as only its allocations are measured.
+        long threadId = Thread.currentThread().getId();
+        List<String> messages = new ArrayList<>();
+        Handler handler = new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                if (record.getLevel().intValue() < Level.INFO.intValue() && record.getThreadID() == (int) threadId) {
+                    messages.add(record.getMessage());
+                }
+            }
+
+            @Override
+            public void flush() {}
+
+            @Override
+            public void close() {}
+        };
+        julLogger.addHandler(handler);
+        long enabled;
+        int enabledMessages;
+        long disabled;
+        try {
+            julLogger.setLevel(Level.FINE);
+            // Warm up, so class loading and compilation aren't counted.
+            new PipelineNodeTreeScanner(run);
+            messages.clear();
+            long before = threadBean.getThreadAllocatedBytes(threadId);
+            new PipelineNodeTreeScanner(run);
+            enabled = threadBean.getThreadAllocatedBytes(threadId) - before;
+            enabledMessages = messages.size();
+
+            julLogger.setLevel(Level.INFO);
+            new PipelineNodeTreeScanner(run);
+            messages.clear();
+            before = threadBean.getThreadAllocatedBytes(threadId);
+            new PipelineNodeTreeScanner(run);
+            disabled = threadBean.getThreadAllocatedBytes(threadId) - before;
+        } finally {
+            julLogger.removeHandler(handler);
+        }
+
+        // The scan logs from its loops when debug is enabled...
+        assertThat(enabledMessages, greaterThan(0));
+        assertThat(messages, empty());
+        // ...but none of those messages are built when it isn't. Each one costs at least a formatted
+        // string and a log record, so skipping them all saves at least this much.
+        assertThat(disabled, lessThanOrEqualTo(enabled - enabledMessages * 64L));
+    }
+}
@@ -0,0 +1,86 @@
+package io.jenkins.plugins.pipelinegraphview.utils;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import hudson.console.AnnotatedLargeText;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.kohsuke.stapler.framework.io.ByteBuffer;
+
+public class LogLineIndexTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void readsWindowsOfLines() throws IOException {
+        ByteBuffer buffer = createLog(0, 10);
+        AnnotatedLargeText<Void> log = new AnnotatedLargeText<>(buffer, StandardCharsets.UTF_8, true, null);
+        LogLineIndex index = new LogLineIndex(4);
+        index.update(log);
+        assertThat(index.getLineCount(), equalTo(10L));
+
+        LogLineIndex.Window window = index.read(log, 5, 3);
+        assertThat(toString(window), equalTo("line 5\nline 6\nline 7\n"));
+        assertThat(window.getStartLine(), equalTo(5L));
+        assertThat(window.getEndLine(), equalTo(8L));
+        assertThat(window.getStartByte(), equalTo((long) "line 0\n".length() * 5));
+
+        // Negative start lines count back from the end, and windows stop at the last line.
+        LogLineIndex.Window tail = index.read(log, -2, 5);
+        assertThat(toString(tail), equalTo("line 8\nline 9\n"));
+        assertThat(tail.getEndByte(), equalTo(buffer.length()));
+
+        LogLineIndex.Window end = index.read(log, 10, 5);
+        assertThat(toString(end), equalTo(""));
+        assertThat(end.getStartByte(), equalTo(buffer.length()));
+    }
+
+    @Test
+    public void indexesLogsIncrementally() throws IOException {
+        ByteBuffer buffer = createLog(0, 3);
+        AnnotatedLargeText<Void> log = new AnnotatedLargeText<>(buffer, StandardCharsets.UTF_8, false, null);
+        LogLineIndex index = new LogLineIndex(2);
+        index.update(log);
+        assertThat(index.getLineCount(), equalTo(3L));
+
+        buffer.write("line 3\nline 4\npartial".getBytes(StandardCharsets.UTF_8));
+        index.update(log);
+        // Lines still being written aren't indexed until they are complete.
+        assertThat(index.getLineCount(), equalTo(5L));
+        assertThat(toString(index.read(log, 3, 10)), equalTo("line 3\nline 4\n"));
+    }
+
+    @Test
+    public void storedIndexIsReadBack() throws IOException {
+        ByteBuffer buffer = createLog(0, 10);
+        buffer.write("last".getBytes(StandardCharsets.UTF_8));
+        AnnotatedLargeText<Void> log = new AnnotatedLargeText<>(buffer, StandardCharsets.UTF_8, true, null);
+        LogLineIndex index = new LogLineIndex(4);
+        index.update(log);
+        File file = new File(tmp.getRoot(), "index/2.idx");
+        index.store(file);
+
+        LogLineIndex loaded = new LogLineIndex(4);
+        loaded.readFrom(file);
+        assertThat(loaded.getLineCount(), equalTo(11L));
+        assertThat(loaded.getIndexedBytes(), equalTo(buffer.length()));
+        assertThat(toString(loaded.read(log, 9, 5)), equalTo("line 9\nlast"));
+    }
+
+    private static ByteBuffer createLog(int from, int to) throws IOException {
+        ByteBuffer buffer = new ByteBuffer();
+        for (int i = from; i < to; i++) {
+            buffer.write(("line " + i + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+        return buffer;
+    }
+
+    private static String toString(LogLineIndex.Window window) throws IOException {
+        return new String(window.getBytes().newInputStream().readAllBytes(), StandardCharsets.UTF_8);
+    }
+}
@@ -5,15 +5,26 @@ import static org.hamcrest.Matchers.*;
 
 import hudson.model.Result;
 import hudson.model.queue.QueueTaskFuture;
+import io.jenkins.plugins.pipelinegraphview.treescanner.IncrementalGraphModel;
 import io.jenkins.plugins.pipelinegraphview.treescanner.NodeRelationshipFinder;
 import io.jenkins.plugins.pipelinegraphview.treescanner.PipelineNodeGraphAdapter;
 import io.jenkins.plugins.pipelinegraphview.treescanner.PipelineNodeTreeScanner;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import org.jenkinsci.plugins.workflow.graph.FlowNode;
+import org.jenkinsci.plugins.workflow.graphanalysis.DepthFirstScanner;
 import org.jenkinsci.plugins.workflow.job.WorkflowJob;
 import org.jenkinsci.plugins.workflow.job.WorkflowRun;
 import org.jenkinsci.plugins.workflow.test.steps.SemaphoreStep;
@@ -96,6 +107,25 @@ public class PipelineGraphApiTest {
         assertThat(stagesString, equalTo("A,Parallel[B[BA,BB],C[CA,CB]],D[E[EA,EB],F[FA,FB]],G"));
     }
 
+    @Test
+    public void createTree_wideParallel() throws Exception {
+        WorkflowRun run = TestUtils.createAndRunJob(j, "wideParallel", "wideParallel.jenkinsfile", Result.UNSTABLE);
+        PipelineGraphApi api = new PipelineGraphApi(run);
+        PipelineGraph graph = api.createTree();
+
+        List<PipelineStage> stages = graph.getStages();
+
+        // Branch statuses are computed concurrently, but must still be in branch order.
+        String stagesString = TestUtils.collectStagesAsString(
+                stages, (PipelineStage stage) -> String.format("{%s,%s}", stage.getName(), stage.getState()));
+        StringBuilder expected = new StringBuilder("{Parallel,unstable}[");
+        for (int i = 1; i <= 20; i++) {
+            expected.append(String.format("{Branch %02d,%s}", i, i == 7 ? "unstable" : "success"));
+            expected.append(i < 20 ? "," : "]");
+        }
+        assertThat(stagesString, equalTo(expected.toString()));
+    }
+
     @Issue("GH#85")
     @Test
     public void createTree_syntheticStages() throws Exception {
@@ -408,4 +438,163 @@ public class PipelineGraphApiTest {
                 equalTo(
                         "foo{success},first-parallel{failure}[bar{skipped},baz{failure}],second-parallel{skipped},Post Actions{success}"));
     }
+
+    @Test
+    public void createTree_completedRunIsCached() throws Exception {
+        WorkflowRun run = TestUtils.createAndRunJob(j, "unstableSmokes", "unstableSmokes.jenkinsfile", Result.FAILURE);
+
+        PipelineGraph graph = new PipelineGraphApi(run).createTree();
+        assertThat(graph.isComplete(), is(true));
+        assertThat(new PipelineGraphApi(run).createTree(), sameInstance(graph));
+
+        PipelineGraphViewCache.get().invalidate(run);
+        assertThat(new PipelineGraphApi(run).createTree(), not(sameInstance(graph)));
+    }
+
+    @Test
+    public void createTree_runningRunUsesIncrementalModel() throws Exception {
+        WorkflowJob job = TestUtils.createJob(j, "incrementalGraphModel", "incrementalGraphModel.jenkinsfile");
+        QueueTaskFuture<WorkflowRun> futureRun = job.scheduleBuild2(0);
+        WorkflowRun run = futureRun.waitForStart();
+
+        SemaphoreStep.waitForStart("a/1", run);
+        // Seeds the model for the running build.
+        String stagesStringA = TestUtils.collectStagesAsString(
+                new PipelineGraphApi(run).createTree().getStages(), PipelineStage::getName);
+        assertThat(stagesStringA, equalTo("A"));
+
+        SemaphoreStep.success("a/1", null);
+        SemaphoreStep.waitForStart("b/1", run);
+        // Nodes added since the model was seeded should have come from the listener.
+        IncrementalGraphModel model = IncrementalGraphModel.forExecution(run.getExecution());
+        assertThat(model, notNullValue());
+        DepthFirstScanner scanner = new DepthFirstScanner();
+        scanner.setup(run.getExecution().getCurrentHeads());
+        List<String> scannedIds = new ArrayList<>();
+        for (FlowNode node : scanner) {
+            scannedIds.add(node.getId());
+        }
+        assertThat(model.getNodes().keySet(), containsInAnyOrder(scannedIds.toArray()));
+        String stagesStringB = TestUtils.collectStagesAsString(
+                new PipelineGraphApi(run).createTree().getStages(), PipelineStage::getName);
+        assertThat(stagesStringB, equalTo("A,B"));
+
+        SemaphoreStep.success("b/1", null);
+        j.waitForCompletion(run);
+        assertThat(IncrementalGraphModel.forExecution(run.getExecution()), nullValue());
+    }
+
+    @Test
+    public void getAdapter_newSnapshotForNewRevision() throws Exception {
+        WorkflowJob job = TestUtils.createJob(j, "incrementalGraphModel", "incrementalGraphModel.jenkinsfile");
+        QueueTaskFuture<WorkflowRun> futureRun = job.scheduleBuild2(0);
+        WorkflowRun run = futureRun.waitForStart();
+        SemaphoreStep.waitForStart("a/1", run);
+
+        PipelineGraphViewCache cache = PipelineGraphViewCache.get();
+        String revision = PipelineGraphViewCache.getRevision(run);
+        PipelineNodeGraphAdapter adapter = cache.getAdapter(run);
+
+        SemaphoreStep.success("a/1", null);
+        SemaphoreStep.waitForStart("b/1", run);
+        assertThat(PipelineGraphViewCache.getRevision(run), not(equalTo(revision)));
+        assertThat(cache.getAdapter(run), not(sameInstance(adapter)));
+
+        SemaphoreStep.success("b/1", null);
+        j.waitForCompletion(run);
+        PipelineNodeGraphAdapter completedAdapter = cache.getAdapter(run);
+        assertThat(cache.getAdapter(run), sameInstance(completedAdapter));
+    }
+
+    @Test
+    public void createTreeDelta_returnsChangedStagesSinceRevision() throws Exception {
+        WorkflowJob job = TestUtils.createJob(j, "incrementalGraphModel", "incrementalGraphModel.jenkinsfile");
+        QueueTaskFuture<WorkflowRun> futureRun = job.scheduleBuild2(0);
+        WorkflowRun run = futureRun.waitForStart();
+        SemaphoreStep.waitForStart("a/1", run);
+
+        PipelineGraphDelta first = new PipelineGraphApi(run).createTreeDelta(null);
+        assertThat(first.isFull(), is(true));
+        assertThat(TestUtils.collectStagesAsString(first.getStages(), PipelineStage::getName), equalTo("A"));
+
+        SemaphoreStep.success("a/1", null);
+        SemaphoreStep.waitForStart("b/1", run);
+        PipelineGraphDelta second = new PipelineGraphApi(run).createTreeDelta(first.getRevision());
+        assertThat(second.isFull(), is(false));
+        assertThat(second.getRevision(), not(equalTo(first.getRevision())));
+        assertThat(second.getRemoved(), empty());
+        List<String> changedNames = second.getChanged().stream()
+                .map(stage -> (String) stage.get("name"))
+                .collect(Collectors.toList());
+        assertThat(changedNames, hasItems("A", "B"));
+        assertThat(second.getChanged().get(0).get("startTimeMillis"), instanceOf(String.class));
+
+        PipelineGraphDelta unknown = new PipelineGraphApi(run).createTreeDelta("unknown");
+        assertThat(unknown.isFull(), is(true));
+
+        SemaphoreStep.success("b/1", null);
+        j.waitForCompletion(run);
+
+        // Only B has changed since - A finished before the last poll.
+        PipelineGraphDelta third = new PipelineGraphApi(run).createTreeDelta(second.getRevision());
+        assertThat(third.isFull(), is(false));
+        List<String> thirdChangedNames = third.getChanged().stream()
+                .map(stage -> (String) stage.get("name"))
+                .collect(Collectors.toList());
+        assertThat(thirdChangedNames, contains("B"));
+
+        // Nothing changes once the run has completed, even though "Started X ago" moves on.
+        Thread.sleep(1100);
+        PipelineGraphDelta fourth = new PipelineGraphApi(run).createTreeDelta(third.getRevision());
+        assertThat(fourth.getRevision(), equalTo(third.getRevision()));
+        assertThat(fourth.getChanged(), empty());
+        assertThat(fourth.getRemoved(), empty());
+    }
+
+    @Test
+    public void getGraph_concurrentRequestsForRunningRunShareOneComputation() throws Exception {
+        WorkflowJob job = TestUtils.createJob(j, "incrementalGraphModel", "incrementalGraphModel.jenkinsfile");
+        QueueTaskFuture<WorkflowRun> futureRun = job.scheduleBuild2(0);
+        WorkflowRun run = futureRun.waitForStart();
+        SemaphoreStep.waitForStart("a/1", run);
+
+        PipelineGraphViewCache cache = PipelineGraphViewCache.get();
+        AtomicInteger computations = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Supplier<PipelineGraph> slowSupplier = () -> {
+            computations.incrementAndGet();
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            return new PipelineGraphApi(run).createTree();
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<PipelineGraph> first = executor.submit(() -> cache.getGraph(run, slowSupplier));
+            started.await();
+            Future<PipelineGraph> second = executor.submit(() -> cache.getGraph(run, slowSupplier));
+            // Only release the first request once the second is waiting for it.
+            long deadline = System.currentTimeMillis() + 30000;
+            while (cache.getInFlightWaiters() == 0) {
+                assertThat("second request didn't wait for the first", System.currentTimeMillis(), lessThan(deadline));
+                Thread.sleep(10);
+            }
+            release.countDown();
+
+            assertThat(first.get(), sameInstance(second.get()));
+            assertThat(computations.get(), equalTo(1));
+        } finally {
+            executor.shutdownNow();
+        }
+
+        SemaphoreStep.success("a/1", null);
+        SemaphoreStep.waitForStart("b/1", run);
+        SemaphoreStep.success("b/1", null);
+        j.waitForCompletion(run);
+    }
 }
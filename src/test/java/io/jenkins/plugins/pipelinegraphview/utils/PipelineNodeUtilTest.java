@@ -8,6 +8,7 @@ import hudson.model.Result;
 import io.jenkins.plugins.pipelinegraphview.treescanner.PipelineNodeGraphAdapter;
 import java.util.List;
 import org.jenkinsci.plugins.workflow.graph.FlowNode;
+import org.jenkinsci.plugins.workflow.graphanalysis.DepthFirstScanner;
 import org.jenkinsci.plugins.workflow.job.WorkflowRun;
 import org.junit.Rule;
 import org.junit.Test;
@@ -62,4 +63,48 @@ public class PipelineNodeUtilTest {
                 startsWith(
                         "Found unhandled groovy.lang.MissingPropertyException exception:\nNo such property: undefined for class: groovy.lang.Binding"));
     }
+
+    @Test
+    public void flagsMatchActionChecks() throws Exception {
+        List<WorkflowRun> runs = List.of(
+                TestUtils.createAndRunJob(j, "syntheticStages", "syntheticStages.jenkinsfile", Result.SUCCESS),
+                TestUtils.createAndRunJob(j, "skippedParallel", "skippedParallel.jenkinsfile", Result.SUCCESS),
+                TestUtils.createAndRunJob(j, "simple_error", "simpleError.jenkinsfile", Result.FAILURE));
+        for (WorkflowRun run : runs) {
+            DepthFirstScanner scanner = new DepthFirstScanner();
+            scanner.setup(run.getExecution().getCurrentHeads());
+            for (FlowNode node : scanner) {
+                int flags = FlowNodeFlags.of(node);
+                String description = run.getParent().getName() + " node " + node.getId();
+                assertThat(description, FlowNodeFlags.isStage(flags), is(PipelineNodeUtil.isStage(node)));
+                assertThat(
+                        description,
+                        FlowNodeFlags.isParallelBranch(flags),
+                        is(PipelineNodeUtil.isParallelBranch(node)));
+                assertThat(
+                        description,
+                        FlowNodeFlags.isSyntheticStage(flags),
+                        is(PipelineNodeUtil.isSyntheticStage(node)));
+                assertThat(
+                        description,
+                        FlowNodeFlags.isPreSyntheticStage(flags),
+                        is(PipelineNodeUtil.isPreSyntheticStage(node)));
+                assertThat(
+                        description,
+                        FlowNodeFlags.isPostSyntheticStage(flags),
+                        is(PipelineNodeUtil.isPostSyntheticStage(node)));
+                assertThat(
+                        description, FlowNodeFlags.isSkippedStage(flags), is(PipelineNodeUtil.isSkippedStage(node)));
+                assertThat(
+                        description,
+                        FlowNodeFlags.isUnhandledException(flags),
+                        is(PipelineNodeUtil.isUnhandledException(node)));
+                assertThat(description, FlowNodeFlags.isPaused(flags), is(PipelineNodeUtil.isPaused(node)));
+                assertThat(
+                        description,
+                        PipelineNodeUtil.getDisplayName(node, flags),
+                        equalTo(PipelineNodeUtil.getDisplayName(node)));
+            }
+        }
+    }
 }
@@ -0,0 +1,146 @@
+package io.jenkins.plugins.pipelinegraphview.utils;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import org.jenkinsci.plugins.workflow.pipelinegraphanalysis.TimingInfo;
+import org.junit.Test;
+
+public class PipelineStageTreeTest {
+
+    @Test
+    public void buildStageTree_nestsStagesUnderFirstParent() {
+        List<PipelineStageInternal> stages = new ArrayList<>();
+        stages.add(stage("1"));
+        stages.add(stage("2", "1"));
+        stages.add(stage("3", "2"));
+        stages.add(stage("4", "1"));
+        stages.add(stage("5"));
+
+        List<PipelineStage> tree = PipelineGraphApi.buildStageTree(stages);
+
+        assertThat(TestUtils.collectStagesAsString(tree, PipelineStage::getName), equalTo("1[2[3],4],5"));
+    }
+
+    @Test
+    public void buildStageTree_nestsStagesWithMultipleParentsOnlyUnderTheFirst() {
+        List<PipelineStageInternal> stages = new ArrayList<>();
+        stages.add(stage("1"));
+        stages.add(stage("2"));
+        stages.add(stage("3", "1", "2"));
+        stages.add(stage("4", "2", "1"));
+
+        List<PipelineStage> tree = PipelineGraphApi.buildStageTree(stages);
+
+        assertThat(TestUtils.collectStagesAsString(tree, PipelineStage::getName), equalTo("1[3],2[4]"));
+    }
+
+    @Test
+    public void buildStageTree_nestsStagesListedBeforeTheirParent() {
+        List<PipelineStageInternal> stages = new ArrayList<>();
+        stages.add(stage("4", "3"));
+        stages.add(stage("3", "1"));
+        stages.add(stage("2", "1"));
+        stages.add(stage("1"));
+        stages.add(stage("5"));
+
+        List<PipelineStage> tree = PipelineGraphApi.buildStageTree(stages);
+
+        assertThat(TestUtils.collectStagesAsString(tree, PipelineStage::getName), equalTo("1[3[4],2],5"));
+    }
+
+    @Test
+    public void buildStageTree_scalesLinearly() {
+        long small = countBuildStageTreeAccesses(1000);
+        long large = countBuildStageTreeAccesses(10000);
+        // The stages have the same shape, so a linear pass reads 10x as much for 10x the stages - a
+        // quadratic one would read ~100x.
+        assertThat(small, greaterThan(0L));
+        assertThat(large, lessThanOrEqualTo(small * 11));
+    }
+
+    @Test
+    public void findTreeParentId_scalesLinearly() {
+        long small = countFindTreeParentIdAccesses(1000);
+        long large = countFindTreeParentIdAccesses(10000);
+        assertThat(small, greaterThan(0L));
+        assertThat(large, lessThanOrEqualTo(small * 11));
+    }
+
+    // Returns the number of stage fields read building the tree.
+    private static long countBuildStageTreeAccesses(int size) {
+        AtomicLong accesses = new AtomicLong();
+        List<PipelineStageInternal> stages = createStages(size, accesses);
+        accesses.set(0);
+        List<PipelineStage> tree = PipelineGraphApi.buildStageTree(stages);
+        assertThat(tree, hasSize(size / 10));
+        return accesses.get();
+    }
+
+    // Returns the number of stage fields read finding the tree parent of every stage, when each is
+    // enclosed by the top-level stage of its chain.
+    private static long countFindTreeParentIdAccesses(int size) {
+        AtomicLong accesses = new AtomicLong();
+        List<PipelineStageInternal> stages = createStages(size, accesses);
+        Map<String, PipelineStageInternal> stageMap = new HashMap<>();
+        for (PipelineStageInternal stage : stages) {
+            stageMap.put(stage.getId(), stage);
+        }
+        accesses.set(0);
+        for (int i = 0; i < size; i++) {
+            String topLevelId = String.valueOf(i - i % 10);
+            String parentId = PipelineGraphApi.findTreeParentId(
+                    stages.get(i), stageMap, Collections.singleton(topLevelId));
+            assertThat(parentId, i % 10 == 0 ? nullValue() : equalTo(topLevelId));
+        }
+        return accesses.get();
+    }
+
+    // Creates top-level stages, each with a chain of nine nested stages.
+    private static List<PipelineStageInternal> createStages(int size, AtomicLong accesses) {
+        List<PipelineStageInternal> stages = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            List<String> parents =
+                    i % 10 == 0 ? Collections.emptyList() : Collections.singletonList(String.valueOf(i - 1));
+            stages.add(new CountingStage(String.valueOf(i), parents, accesses));
+        }
+        return stages;
+    }
+
+    private static PipelineStageInternal stage(String id, String... parents) {
+        List<String> parentIds = new ArrayList<>();
+        Collections.addAll(parentIds, parents);
+        return new PipelineStageInternal(id, id, parentIds, "success", 50, "STAGE", id, false, new TimingInfo(0, 0, 0));
+    }
+
+    /*
+     * Counts reads of the fields the tree is built from, so the work done can be checked without
+     * timing it.
+     */
+    private static class CountingStage extends PipelineStageInternal {
+        private final AtomicLong accesses;
+
+        CountingStage(String id, List<String> parents, AtomicLong accesses) {
+            super(id, id, new ArrayList<>(parents), "success", 50, "STAGE", id, false, new TimingInfo(0, 0, 0));
+            this.accesses = accesses;
+        }
+
+        @Override
+        public String getId() {
+            accesses.incrementAndGet();
+            return super.getId();
+        }
+
+        @Override
+        public List<String> getParents() {
+            accesses.incrementAndGet();
+            return super.getParents();
+        }
+    }
+}
@@ -8,6 +8,8 @@ import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.not;
 import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
 
 import hudson.model.Result;
 import hudson.model.queue.QueueTaskFuture;
@@ -551,4 +553,48 @@ public class PipelineStepApiTest {
             TestUtils.assertTimesInRange(n, checks.get(n.getName()));
         }
     }
+
+    @Test
+    public void getAllSteps_completedRunIsCached() throws Exception {
+        WorkflowRun run = TestUtils.createAndRunJob(j, "unstableSmokes", "unstableSmokes.jenkinsfile", Result.FAILURE);
+
+        PipelineStepList steps = new PipelineStepApi(run).getAllSteps();
+        assertThat(new PipelineStepApi(run).getAllSteps(), sameInstance(steps));
+
+        // Stage steps of a completed run are taken from the cached list.
+        String successId =
+                TestUtils.getNodesByDisplayName(run, "success").get(0).getId();
+        List<PipelineStep> stageSteps = new PipelineStepApi(run).getSteps(successId).getSteps();
+        assertThat(stageSteps, hasSize(1));
+        assertThat(stageSteps.get(0).getName(), is("baz"));
+    }
+
+    @Test
+    public void finishedStepLabelsAreRenderedOnce() throws Exception {
+        QueueTaskFuture<WorkflowRun> futureRun =
+                TestUtils.createAndRunJobNoWait(j, "incrementalGraphModel", "incrementalGraphModel.jenkinsfile");
+        WorkflowRun run = futureRun.waitForStart();
+        SemaphoreStep.waitForStart("a/1", run);
+        SemaphoreStep.success("a/1", null);
+        SemaphoreStep.waitForStart("b/1", run);
+
+        List<PipelineStep> steps = new PipelineStepApi(run).getAllSteps().getSteps();
+        Map<String, PipelineStepApi.StepLabel> labels = PipelineGraphViewCache.get().getStepLabels(run);
+        // The echo step has finished, the semaphore step hasn't.
+        PipelineStep echoStep = steps.stream()
+                .filter(step -> step.getName().equals("Hello, world!"))
+                .findFirst()
+                .orElseThrow();
+        PipelineStep semaphoreStep = steps.get(steps.size() - 1);
+        assertThat(labels.get(echoStep.getId() + ":STEP"), notNullValue());
+        assertThat(labels.get(semaphoreStep.getId() + ":STEP"), nullValue());
+
+        // Later polls reuse the rendered label.
+        PipelineStepApi.StepLabel echoLabel = labels.get(echoStep.getId() + ":STEP");
+        new PipelineStepApi(run).getAllSteps();
+        assertThat(labels.get(echoStep.getId() + ":STEP"), sameInstance(echoLabel));
+
+        SemaphoreStep.success("b/1", null);
+        j.waitForCompletion(run);
+    }
 }